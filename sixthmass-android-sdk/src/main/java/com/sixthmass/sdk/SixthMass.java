@@ -4,25 +4,17 @@ import android.content.Context;
 import android.os.Build;
 import android.util.Log;
 
+import com.sixthmass.sdk.util.M6AndroidPlatform;
 import com.sixthmass.sdk.util.M6Config;
-import com.sixthmass.sdk.util.M6ProfileEmitter;
-import com.sixthmass.sdk.util.M6Task;
-import com.sixthmass.sdk.util.M6TaskEmitter;
-import com.sixthmass.sdk.util.M6Util;
+import com.sixthmass.sdk.util.M6MetricsListener;
+import com.sixthmass.sdk.util.M6MetricsSnapshot;
+import com.sixthmass.sdk.util.M6Pipeline;
 import com.sixthmass.sdk.util.SixthMassException;
 import com.sixthmass.sdk.util.SixthMassItem;
 import com.sixthmass.sdk.util.SixthMassUserProfile;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /*
   Created by Igor Rendulic on 4/24/17.
@@ -45,8 +37,11 @@ import java.util.concurrent.LinkedBlockingQueue;
  * SixthMass works only on one consumer thread - M6TaskEmitter
  * SixthMass is thread safe. It works in offline mode as with server problems
  * It sends events one by one as they come in unless they can't be saved
- * It also handles a burst of events, queuing them up.
- * Each event gets it's own worker in a non blocking application manner
+ * It also handles a burst of events, queuing them up in a bounded ring buffer.
+ * Tracking only publishes the event to the ring buffer and never waits for the consumer
+ *
+ * This is Android facade of the platform independent pipeline (M6Pipeline in sixthmass-core), bound to Android
+ * by M6AndroidPlatform
  *
  * TODO: - custom logging (into separate file) if log "large" send the log somewhere on server?
  *
@@ -56,54 +51,34 @@ import java.util.concurrent.LinkedBlockingQueue;
 */
 public final class SixthMass {
 
-    //private static M6Config config;
-
-    /**
-     * FIFO runnable queue for adding new workers
-     */
-    private static final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-
-    /**
-     * simple task list (which is serialized to persistent state
-     * (covering situations as server not available at the moment, app offline, ...)
-     */
-    private static List<M6Task> taskList = Collections.synchronizedList(new ArrayList<M6Task>());
-
-    /**
-     * no need to have more than 1 thread sending events
-     */
-    private static ExecutorService poolExecutor = Executors.newSingleThreadExecutor();
-
-    /**
-     * 5 threads should be enough for profile updates (parallel execution possible, overriding the profile changes also possible)
-     * SDK user has to take into consideration in hers/his own code not to overwrite hers/his own object values
-     */
-    private static ExecutorService poolProfileExecutor = Executors.newFixedThreadPool(5);
-
     /**
-     * queue holding tasks to be sent to SixthMass event server
+     * How long shutdown waits for flush and for SDK threads to stop
      */
-    private static ConcurrentLinkedQueue<M6Task> taskQueue = new ConcurrentLinkedQueue<>();
+    private static final long SHUTDOWN_TIMEOUT = 5000;
 
-    /**
-     * Profile queue holding profile updates to be sent to SixthMass servers
-     */
-    private static ConcurrentLinkedQueue<SixthMassUserProfile> profileQueue = new ConcurrentLinkedQueue<>();
+    static {
+        // events tracked before init are ordered by the same monotonic clock as events after init
+        M6Config.setPlatformClock(M6AndroidPlatform.CLOCK);
+    }
 
     /**
      * Initialization of SDK
      *
      * Required as first action before any other SDK calls in ActivityMain
      *
+     * Returns immediately, stored state (user, device id) is loaded on SDK background thread. Events tracked before
+     * init are kept in a small buffer and sent once the SDK is initialized
+     *
      * @param context Android context (most commonly referred as "this" in ActivityMain)
      * @param token clientId defined by SixthMass analytics
      */
     public static void init(Context context, String token) {
-        M6Config.instance(context,token);
+        M6Config config = M6Config.instance(new M6AndroidPlatform(context), token);
+        M6Pipeline.start(config);
 
-        // the start event is handled only in cases when ActivityCallbacks not supported
+        // the session and start event are handled here only in cases when ActivityCallbacks not supported
         if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-            track(M6Util.EVENT_NAME_LAUNCH);
+            M6Pipeline.startSession();
         }
     }
 
@@ -117,30 +92,14 @@ public final class SixthMass {
      *
      * Only non-null values are updated in SixthMass analytics thus preserving non set old properties of the user profile object
      *
-     * <p>
-     *     SixthMassSDK must be initialized first
-     * </p>
+     * Returns immediately. Updates in quick succession are merged (last value of each field wins) and sent as one request.
+     * Updates made before init are kept in a small buffer and sent once the SDK is initialized
      *
      * @param profile Assigned user profile
      * @param customProperties Optional
      */
     public static void profileUpdate(SixthMassUserProfile profile, Map<String,String> customProperties) {
-
-        try {
-
-            profile = M6Util.augmentProfile(profile, M6Config.instance());
-
-            profileQueue.add(profile);
-
-            M6ProfileEmitter emit = new M6ProfileEmitter(profileQueue, M6Config.instance());
-
-            Future<?> future = poolProfileExecutor.submit(emit);
-            while (!future.isDone() && !future.isCancelled()) { // TODO: remove later?
-            }
-
-        } catch (SixthMassException e) {
-            Log.e("SixthMass", e.getMessage(), e);
-        }
+        M6Pipeline.profileUpdate(profile, customProperties);
     }
 
     /**
@@ -165,8 +124,7 @@ public final class SixthMass {
      * @param customProperties Optional
      */
     public static void register(SixthMassUserProfile profile, Map<String,String> customProperties) {
-        profileUpdate(profile,customProperties);
-        track(M6Util.EVENT_NAME_REGISTER, customProperties);
+        M6Pipeline.register(profile, customProperties);
     }
 
     /**
@@ -180,18 +138,7 @@ public final class SixthMass {
      * @param customProperties Optional additional purchase properties
      */
     public static void purchase(List<SixthMassItem> items, Map<String,String> customProperties) {
-
-        try {
-            M6Task task = new M6Task(M6Util.EVENT_NAME_PURCHASE, customProperties);
-
-            // adding purchase data to task
-            task = M6Util.augmentWithPurchase(task,items);
-
-            track(task);
-
-        } catch (SixthMassException e) {
-            Log.e("SixtMass", e.getMessage(),e);
-        }
+        M6Pipeline.purchase(items, customProperties);
     }
 
     /**
@@ -206,22 +153,14 @@ public final class SixthMass {
     /*
      * Event tracking method with custom properties
      * <p>
-     *     SixthMassSDK must be initialized first
+     *     Events tracked before SDK is initialized wait in a small buffer (when it's full they are dropped)
      * </p>
      *
      * @param eventName Name of the event to track
      * @param customProperties Optional
      */
     public static void track(String eventName, Map<String,String> customProperties) {
-
-        // creating and augmenting task to be sent to sixthmass server
-        // the constructor augments the task with user data, session id, device, operating system and other android specifics
-        try {
-            M6Task task = new M6Task(eventName, customProperties);
-            track(task);
-        } catch (SixthMassException e) {
-            Log.e("SixthMass", e.getMessage(), e);
-        }
+        M6Pipeline.track(eventName, customProperties);
     }
 
     /**
@@ -233,9 +172,36 @@ public final class SixthMass {
         track(eventName, null);
     }
 
+    /**
+     * Sends all tracked events now regardless of batching and waits until they are sent or the timeout elapses.
+     * Should not be called on the main thread
+     *
+     * Tracked events are also flushed automatically when the app goes to background
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @return number of events left unsent (they stay stored and are sent later), -1 if SDK not initialized or
+     * flush didn't complete in time
+     */
+    public static long flush(long timeout) {
+        return M6Pipeline.flush(timeout);
+    }
+
+    /**
+     * Flushes tracked events and stops SDK threads. Events tracked after shutdown wait in a small buffer until SDK is
+     * initialized again. Should not be called on the main thread
+     *
+     * @return number of events left unsent (they stay stored and are sent on next init), -1 if SDK not initialized
+     * or threads didn't stop in time (SDK can't be initialized again until they stop)
+     */
+    public static long shutdown() {
+        return M6Pipeline.shutdown(SHUTDOWN_TIMEOUT);
+    }
+
     /**
      * Returns auto generated user profile or null if SDK not initialized in MainActivity in method protected void onCreate(Bundle savedInstanceState)
      *
+     * Waits for stored state if it's still being loaded right after init
+     *
      * It can me modified as desired. After updating SixtMassUserProfile object profileUpdate function must be called
      * for changed to synchronize with the server.
      *
@@ -251,28 +217,32 @@ public final class SixthMass {
     }
 
     /**
-     * Main method for sending events
-     *s
-     * @param task Task object
+     * Returns current metrics of the SDK (queue depth, journal size, sent/dropped/retried events, bytes sent,
+     * HTTP status codes and latency histograms) or null if SDK not initialized
+     *
+     * @return metrics snapshot
      */
-    private static void track(final M6Task task) {
-
+    public static M6MetricsSnapshot getMetrics() {
         try {
-            // tasks are added to concurrent queue
-            // we don't wan't to block main thread but it's also thread safe
-            taskQueue.add(task);
-            // running new worker in the blocking queue (thread safe) for each task added
-            // but only on one thread
-            // that we get sequential execution of threads (until previous thread finished, new one is waiting in Blocking Queue
-            // some of the threads may run on "empty" TaskList but that's ok since in normal scenario no burst of events
-            // is expected even though SixthMassAPI can handle those too
-            M6TaskEmitter emit = new M6TaskEmitter(taskQueue, M6Config.instance());
+            return M6Config.instance().getMetrics();
+        } catch (SixthMassException e) {
+            Log.e("SixthMass", e.getMessage(), e);
+        }
+        return null;
+    }
 
-            // not waiting for the future to finish (maybe loss of couple of last events when app closed?)
-            // maybe continue in background to send events?
-            Future<?> future = poolExecutor.submit(emit);
-            while (!future.isDone() && !future.isCancelled()) { // TODO: remove later?
-            }
+    /**
+     * Sets listener receiving SDK metrics after each upload attempt (called on SDK background thread)
+     *
+     * <p>
+     *     SixthMassSDK must be initialized first
+     * </p>
+     *
+     * @param listener metrics listener (null to remove)
+     */
+    public static void setMetricsListener(M6MetricsListener listener) {
+        try {
+            M6Config.instance().setMetricsListener(listener);
         } catch (SixthMassException e) {
             Log.e("SixthMass", e.getMessage(), e);
         }
@@ -5,9 +5,6 @@ import android.app.Activity;
 import android.app.Application;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
-import android.util.Log;
 
 /*
   Created by Igor Rendulic on 5/11/17.
@@ -26,66 +23,64 @@ import android.util.Log;
     
  */
 
+/**
+ * Counts started activities and tells the foreground callback when the app comes to foreground (first activity
+ * started) or goes to background (last activity stopped)
+ *
+ * Activity recreated because of configuration change (e.g. rotation) is not a background transition. Callbacks
+ * are called on the main thread.
+ */
 @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
 final class M6ActivityLifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
 
-    private Handler m6Handler = new Handler(Looper.getMainLooper());
+    /**
+     * Number of started and not yet stopped activities
+     */
+    private int m6StartedActivities;
+
+    /**
+     * True when the last stopped activity is being recreated because of configuration change
+     */
+    private boolean m6ChangingConfiguration;
 
-    private boolean m6IsForeground = true;
-    private boolean m6Paused = true;
-    static final long BACKGROUND_DELAY = 500;
-    Runnable m6BackgroundTransition = null;
-    private M6ForegroundCallback foreground;
+    private final M6ForegroundCallback foreground;
 
     M6ActivityLifecycleCallbacks(M6ForegroundCallback foreground) {
         this.foreground = foreground;
     }
 
     @Override
-    public void onActivityPaused(Activity activity) {
-        m6Paused = true;
-
-        if (m6BackgroundTransition != null) {
-            m6Handler.removeCallbacks(m6BackgroundTransition);
+    public void onActivityStarted(Activity activity) {
+        m6StartedActivities++;
+        if (m6StartedActivities == 1 && !m6ChangingConfiguration) {
+            foreground.appInForeground();
         }
-
-        m6Handler.postDelayed(m6BackgroundTransition = new Runnable() {
-            @Override
-            public void run() {
-                if (m6IsForeground && m6Paused) {
-                    m6IsForeground = false;
-                }
-            }
-        }, BACKGROUND_DELAY);
+        m6ChangingConfiguration = false;
     }
 
     @Override
-    public void onActivityResumed(Activity activity) {
-        m6Paused = true;
-        boolean wasInBackground = !m6IsForeground;
-        m6IsForeground = true;
-
-        if (m6IsForeground) {
-            foreground.appInForeground();
-            Log.i("SixthMass","SixtMass SDK APP is in foreground: " + m6IsForeground);
+    public void onActivityStopped(Activity activity) {
+        if (m6StartedActivities == 0) {
+            // SDK initialized after this activity was started
+            return;
         }
-
-        if (m6BackgroundTransition!= null) {
-            m6Handler.removeCallbacks(m6BackgroundTransition);
+        m6StartedActivities--;
+        m6ChangingConfiguration = activity.isChangingConfigurations();
+        if (m6StartedActivities == 0 && !m6ChangingConfiguration) {
+            foreground.appInBackground();
         }
-
     }
 
-    @Override
-    public void onActivityStarted(Activity activity) {
+    public boolean getIsInForeground() {
+        return m6StartedActivities > 0;
     }
 
-    public boolean getIsInForeground() {
-        return m6IsForeground;
+    @Override
+    public void onActivityResumed(Activity activity) {
     }
 
-    public boolean isPaused() {
-        return m6Paused;
+    @Override
+    public void onActivityPaused(Activity activity) {
     }
 
     @Override
@@ -97,9 +92,6 @@ final class M6ActivityLifecycleCallbacks implements Application.ActivityLifecycl
     }
 
     @Override
-    public void onActivityStopped(Activity activity) {
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
     }
-
-    @Override
-    public void onActivityCreated(Activity activity, Bundle savedInstanceState) { }
-}
\ No newline at end of file
+}
@@ -0,0 +1,189 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import android.annotation.TargetApi;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * Android binding of the SDK core
+ *
+ * Storage is SDK Shared Preferences and app files directory, device values come from Build and ANDROID_ID, logging
+ * goes to Logcat and monotonic time is SystemClock.elapsedRealtime (keeps counting in deep sleep). Sessions are
+ * started by activity lifecycle callbacks (M6ForegroundCallbackHandler) and device values are captured again when
+ * timezone or locale changes.
+ *
+ * Creating the platform and attaching it does no disk I/O. ANDROID_ID and stored values are read later on SDK
+ * background threads.
+ *
+ * @since 0.0.5
+ */
+public final class M6AndroidPlatform implements M6Platform, M6DeviceInfo, M6Logger, M6Clock {
+
+    /**
+     * Wall clock and SystemClock.elapsedRealtime, available before init (events tracked before init are stamped
+     * with it, see M6Config.setPlatformClock)
+     */
+    public static final M6Clock CLOCK = new M6Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * Android Context
+     */
+    private final Context context;
+
+    private final M6Storage storage;
+
+    /**
+     * Activity callback tracking if app is in foreground or background
+     */
+    private M6ActivityLifecycleCallbacks sixthMassActivityCallbacks;
+
+    /**
+     * @param context Android Context
+     */
+    public M6AndroidPlatform(Context context) {
+        this.context = context;
+        this.storage = new M6AndroidStorage(context.getSharedPreferences(M6Util.SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE),
+                context);
+    }
+
+    @Override
+    public M6Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public M6DeviceInfo getDeviceInfo() {
+        return this;
+    }
+
+    @Override
+    public M6Logger getLogger() {
+        return this;
+    }
+
+    @Override
+    public M6Clock getClock() {
+        return this;
+    }
+
+    @Override
+    public void attach(M6Config config) {
+        this.sixthMassActivityCallbacks = registerSixthMassActivityLifecycleCallbacks(context, config);
+        registerDeviceContextReceiver(context, config);
+    }
+
+    /**
+     * Register receiver dropping the device context whenever timezone or locale changes
+     *
+     * @param context application context
+     * @param config SDK configuration
+     */
+    private void registerDeviceContextReceiver(Context context, final M6Config config) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                config.resetDeviceContext();
+            }
+        }, filter);
+    }
+
+    /**
+     * Register activity callbacks for SixthMass SDK (only for versions equal or higher to ice cream sandwich
+     *
+     * @param context application context
+     * @param config SDK configuration
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    M6ActivityLifecycleCallbacks registerSixthMassActivityLifecycleCallbacks(Context context, M6Config config) {
+
+        M6ActivityLifecycleCallbacks sixthMassCallbacks = null;
+
+        if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+
+            if (context.getApplicationContext() instanceof Application) {
+                final Application app = (Application) context.getApplicationContext();
+                sixthMassCallbacks = new M6ActivityLifecycleCallbacks(new M6ForegroundCallbackHandler(config));
+                app.registerActivityLifecycleCallbacks(sixthMassCallbacks);
+            } else {
+                Log.i("SixthMass","Context not in Application. Activity Lifecycle callbacks not supported in this OS");
+            }
+        }
+        return sixthMassCallbacks;
+    }
+
+    @Override
+    public String getOs() {
+        return "Android";
+    }
+
+    @Override
+    public String getOsVersion() {
+        return Build.VERSION.RELEASE;
+    }
+
+    @Override
+    public String getManufacturer() {
+        return Build.MANUFACTURER;
+    }
+
+    @Override
+    public String getModel() {
+        return Build.MODEL;
+    }
+
+    @Override
+    public String getDeviceId() {
+        return Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+    }
+
+    @Override
+    public void log(int priority, String tag, String message, Throwable error) {
+        if (error != null) {
+            message = message + '\n' + Log.getStackTraceString(error);
+        }
+        Log.println(priority, tag, message);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return CLOCK.currentTimeMillis();
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return CLOCK.elapsedRealtime();
+    }
+}
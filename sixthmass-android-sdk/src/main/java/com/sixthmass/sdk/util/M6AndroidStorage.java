@@ -0,0 +1,100 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * M6Storage on top of SDK Shared Preferences and app files directory
+ *
+ * Nothing is read in the constructor (Shared Preferences load asynchronously, files directory is resolved on first
+ * use) so it can be created on the main thread
+ *
+ * @since 0.0.5
+ */
+final class M6AndroidStorage implements M6Storage {
+
+    private final SharedPreferences preferences;
+
+    private final Context context;
+
+    M6AndroidStorage(SharedPreferences preferences, Context context) {
+        this.preferences = preferences;
+        this.context = context;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return context.getFilesDir();
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return preferences.getString(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        return preferences.getLong(key, defaultValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return preferences.contains(key);
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return preferences.getAll();
+    }
+
+    @Override
+    public Editor edit() {
+        final SharedPreferences.Editor editor = preferences.edit();
+        return new Editor() {
+            @Override
+            public Editor putString(String key, String value) {
+                editor.putString(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                editor.putLong(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                editor.remove(key);
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                return editor.commit();
+            }
+
+            @Override
+            public void apply() {
+                editor.apply();
+            }
+        };
+    }
+}
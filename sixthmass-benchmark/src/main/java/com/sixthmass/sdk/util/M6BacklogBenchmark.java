@@ -0,0 +1,122 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole backlog of unsent events: legacy Shared Preferences format (Java serialization + byte encoding) compared
+ * with journal records
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class M6BacklogBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int backlog;
+
+    private List<M6Task> tasks;
+
+    private String serialized;
+
+    private byte[] bytes;
+
+    private String encoded;
+
+    private List<byte[]> records;
+
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    @Setup
+    public void setup() throws Exception {
+        tasks = M6Fixtures.backlog(backlog);
+        serialized = M6Util.serialize(tasks);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream objects = new ObjectOutputStream(out);
+        objects.writeObject(tasks);
+        objects.close();
+        bytes = out.toByteArray();
+        encoded = M6Util.encodeBytes(bytes);
+        records = new ArrayList<>(backlog);
+        for (M6Task task : tasks) {
+            int length = codec.encode(task);
+            byte[] record = new byte[length];
+            System.arraycopy(codec.getBuffer(), 0, record, 0, length);
+            records.add(record);
+        }
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return M6Util.serialize(tasks);
+    }
+
+    @Benchmark
+    public List<M6Task> deserialize() {
+        return M6Util.deserialize(serialized);
+    }
+
+    @Benchmark
+    public String encodeBytes() {
+        return M6Util.encodeBytes(bytes);
+    }
+
+    @Benchmark
+    public byte[] decodeBytes() {
+        return M6Util.decodeBytes(encoded);
+    }
+
+    @Benchmark
+    public long encodeRecords() {
+        long length = 0;
+        for (M6Task task : tasks) {
+            length += codec.encode(task);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int decodeRecords() {
+        int decoded = 0;
+        for (byte[] record : records) {
+            if (codec.decode(record) != null) {
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,130 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+
+/**
+ * Fake HTTP transport for benchmarks
+ *
+ * Installs URL handler for http which answers every request with 200 without touching the network. Request body is
+ * written to a sink discarding it, so M6HttpTransport still encodes and (optionally) compresses the whole payload.
+ * Requests to 127.0.0.1 (local server of M6KeepAliveBenchmark) go to the network as usual.
+ *
+ * @since 0.0.5
+ */
+public final class M6FakeHttp {
+
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private static boolean installed;
+
+    private M6FakeHttp() {
+    }
+
+    /**
+     * Installs the fake handler (once per JVM, before the first http URL is created)
+     */
+    public static synchronized void install() throws IOException {
+        if (installed) {
+            return;
+        }
+        // URL created in context of this one uses the default http handler
+        final URL network = new URL("http://" + LOOPBACK + "/");
+        URL.setURLStreamHandlerFactory(new URLStreamHandlerFactory() {
+            @Override
+            public URLStreamHandler createURLStreamHandler(String protocol) {
+                if (!"http".equals(protocol)) {
+                    return null;
+                }
+                return new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL url) throws IOException {
+                        if (LOOPBACK.equals(url.getHost())) {
+                            return new URL(network, url.toString()).openConnection();
+                        }
+                        return new Connection(url);
+                    }
+                };
+            }
+        });
+        installed = true;
+    }
+
+    private static final class Connection extends HttpURLConnection {
+
+        private static final byte[] BODY = "ok".getBytes();
+
+        Connection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            connected = true;
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return HTTP_OK;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(BODY);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return null;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared setup of benchmarks: SDK configuration on M6JvmPlatform (temporary directory) with fake HTTP and sample events
+ *
+ * @since 0.0.5
+ */
+public final class M6Fixtures {
+
+    public static final String TOKEN = "benchmark-token";
+
+    private static M6Config config;
+
+    private M6Fixtures() {
+    }
+
+    /**
+     * SDK configuration (initialized once per JVM)
+     *
+     * @return configuration
+     */
+    public static synchronized M6Config config() throws Exception {
+        if (config == null) {
+            M6FakeHttp.install();
+            // dropped events are logged one by one, console output would be measured instead of the SDK
+            Logger.getLogger("com.sixthmass.sdk").setLevel(Level.OFF);
+            File dir = File.createTempFile("sixthmass-benchmark", "");
+            if (!dir.delete() || !dir.mkdirs()) {
+                throw new IOException("Can't create " + dir);
+            }
+            config = M6Config.instance(new M6JvmPlatform(dir), TOKEN);
+        }
+        return config;
+    }
+
+    /**
+     * Typical custom properties of an event
+     *
+     * @return properties
+     */
+    public static Map<String, String> properties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("screen", "ProductDetailActivity");
+        properties.put("productId", "085715409164");
+        properties.put("category", "Fragrance \"Classic\"");
+        properties.put("price", "10.00");
+        return properties;
+    }
+
+    /**
+     * Event as it's stored in the journal (enriched and linked to the previous one)
+     *
+     * @param name event name
+     * @param previous previous event (may be null)
+     * @return task
+     */
+    public static M6Task task(String name, M6Task previous) throws Exception {
+        M6Config config = config();
+        M6Task task = new M6Task(name, properties());
+        task.enrich(config);
+        task.augmentTask(previous);
+        return task;
+    }
+
+    /**
+     * Backlog of events (every tenth one is a purchase)
+     *
+     * @param size number of events
+     * @return tasks
+     */
+    public static List<M6Task> backlog(int size) throws Exception {
+        List<M6Task> tasks = new ArrayList<>(size);
+        M6Task previous = null;
+        for (int i = 0; i < size; i++) {
+            M6Task task = task(i % 10 == 9 ? M6Util.EVENT_NAME_PURCHASE : "view_" + (i % 7), previous);
+            if (i % 10 == 9) {
+                List<SixthMassItem> items = new ArrayList<>();
+                items.add(new SixthMassItem("D-TOY", "D-JOY Tri-Spinner Fidget", 2.90, 1));
+                M6Util.augmentWithPurchase(task, items);
+            }
+            tasks.add(task);
+            previous = task;
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,193 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sending batches to a local HTTP server over loopback: new connection per request (as M6Util.httpPost did before
+ * 0.0.5) against M6HttpTransport reusing kept alive connections. Throughput is requests per second, number of TCP
+ * connections the server accepted is printed after each iteration
+ *
+ * Loopback has no round trip and no TLS, so the difference shown here is the lower bound of what reuse saves on a
+ * mobile network.
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class M6KeepAliveBenchmark {
+
+    private static final byte[] RESPONSE = "{\"status\":\"ok\"}".getBytes();
+
+    /**
+     * Path of requests after which the server closes the connection
+     */
+    private static final String CLOSE = "/close";
+
+    @Param({"1", "50"})
+    public int events;
+
+    private HttpServer server;
+
+    private ExecutorService serverThreads;
+
+    private String endpoint;
+
+    private URL closingUrl;
+
+    private M6HttpTransport transport;
+
+    private String payload;
+
+    /**
+     * Client ports seen by the server (one per TCP connection)
+     */
+    private final Set<Integer> connections = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        serverThreads = Executors.newFixedThreadPool(2);
+        server.setExecutor(serverThreads);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                connections.add(exchange.getRemoteAddress().getPort());
+                requests.incrementAndGet();
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // request body is discarded
+                }
+                in.close();
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                if (exchange.getRequestURI().getPath().endsWith(CLOSE)) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                }
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(RESPONSE);
+                out.close();
+            }
+        });
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/bulk";
+        closingUrl = new URL(endpoint + CLOSE);
+        transport = new M6HttpTransport();
+
+        List<M6Task> tasks = M6Fixtures.backlog(events);
+        M6JsonWriter writer = new M6JsonWriter(new StringBuilder());
+        writer.beginArray();
+        for (M6Task task : tasks) {
+            task.writeJson(writer);
+        }
+        writer.endArray();
+        payload = writer.getBuffer().toString();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.println();
+        System.out.println(requests.get() + " requests over " + connections.size() + " connections");
+        requests.set(0);
+        connections.clear();
+    }
+
+    @TearDown
+    public void stop() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    /**
+     * Request path before 0.0.5: new connection, disconnected after the response. Android's HttpURLConnection
+     * closes the socket on disconnect(), the JDK one keeps it when the body was read, so here the server closes it
+     */
+    @Benchmark
+    public String connectionPerRequest() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) closingUrl.openConnection();
+        try {
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(10000);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            byte[] bytes = payload.getBytes("UTF-8");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            OutputStream out = connection.getOutputStream();
+            out.write(bytes);
+            out.close();
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Error code: " + connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            in.close();
+            return body.toString("UTF-8");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Benchmark
+    public String keepAlive() throws IOException {
+        return transport.post(endpoint, payload, -1);
+    }
+}
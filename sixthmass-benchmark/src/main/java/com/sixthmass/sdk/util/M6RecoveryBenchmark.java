@@ -0,0 +1,146 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening the event journal after a crash: backlog of unsent events with an incomplete record at the end of the
+ * tail segment. Recovery scans only the tail segment, so opening should not depend on the backlog size. Counting
+ * all records shows what scanning the whole backlog would cost
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class M6RecoveryBenchmark {
+
+    /**
+     * Incomplete record left by the crash: header of a 200 byte record and only part of its payload
+     */
+    private static final byte[] TORN_RECORD = {0, 0, 0, (byte) 200, 1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Param({"1000", "100000"})
+    public int backlog;
+
+    private File directory;
+
+    private M6StateStore state;
+
+    /**
+     * Tail segment of the crashed run and its length before the incomplete record
+     */
+    private File tail;
+
+    private long tailLength;
+
+    private M6Journal opened;
+
+    @Setup
+    public void setup() throws Exception {
+        directory = File.createTempFile("sixthmass-recovery", "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        state = M6StateStore.open(directory);
+        M6Journal journal = new M6Journal(new File(directory, M6Util.JOURNAL_DIRECTORY), state,
+                M6StateStore.EVENT_JOURNAL);
+        M6TaskCodec codec = new M6TaskCodec();
+        List<M6Task> tasks = M6Fixtures.backlog(backlog);
+        for (M6Task task : tasks) {
+            journal.append(codec.getBuffer(), codec.encode(task), task.timestamp);
+        }
+        journal.close();
+        tail = lastSegment();
+        tailLength = tail.length();
+    }
+
+    /**
+     * Crash while appending: segments started by the previous open are removed and the tail ends with an
+     * incomplete record again
+     */
+    @Setup(Level.Invocation)
+    public void crash() throws IOException {
+        File last;
+        while (!(last = lastSegment()).equals(tail)) {
+            if (!last.delete()) {
+                throw new IOException("Can't delete " + last);
+            }
+        }
+        RandomAccessFile file = new RandomAccessFile(tail, "rw");
+        try {
+            file.setLength(tailLength);
+            file.seek(tailLength);
+            file.write(TORN_RECORD);
+        } finally {
+            file.close();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (opened != null) {
+            opened.close();
+            opened = null;
+        }
+    }
+
+    @Benchmark
+    public M6Journal recover() throws IOException {
+        opened = new M6Journal(new File(directory, M6Util.JOURNAL_DIRECTORY), state, M6StateStore.EVENT_JOURNAL);
+        return opened;
+    }
+
+    @Benchmark
+    public int recoverAndCountAll() throws IOException {
+        opened = new M6Journal(new File(directory, M6Util.JOURNAL_DIRECTORY), state, M6StateStore.EVENT_JOURNAL);
+        return opened.pendingRecords();
+    }
+
+    private File lastSegment() {
+        File[] files = new File(directory, M6Util.JOURNAL_DIRECTORY).listFiles();
+        File last = null;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".seg") && (last == null || file.getName().compareTo(last.getName()) > 0)) {
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,100 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single event: construction on the caller thread, enrichment, JSON encoding (org.json tree vs streaming writer)
+ * and journal record encoding/decoding
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class M6TaskBenchmark {
+
+    private M6Config config;
+
+    private Map<String, String> properties;
+
+    private M6Task task;
+
+    private final M6JsonWriter writer = new M6JsonWriter(new StringBuilder(1024));
+
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    private byte[] record;
+
+    @Setup
+    public void setup() throws Exception {
+        config = M6Fixtures.config();
+        properties = M6Fixtures.properties();
+        task = M6Fixtures.task("view_product", M6Fixtures.task(M6Util.EVENT_NAME_LAUNCH, null));
+        int length = codec.encode(task);
+        record = new byte[length];
+        System.arraycopy(codec.getBuffer(), 0, record, 0, length);
+    }
+
+    @Benchmark
+    public M6Task construct() {
+        return new M6Task("view_product", properties);
+    }
+
+    @Benchmark
+    public M6Task constructAndEnrich() throws Exception {
+        M6Task created = new M6Task("view_product", properties);
+        created.enrich(config);
+        return created;
+    }
+
+    @Benchmark
+    public String toJson() throws Exception {
+        return task.toJson().toString();
+    }
+
+    @Benchmark
+    public int writeJson() throws Exception {
+        writer.reset();
+        task.writeJson(writer);
+        return writer.getBuffer().length();
+    }
+
+    @Benchmark
+    public int encodeRecord() {
+        return codec.encode(task);
+    }
+
+    @Benchmark
+    public M6Task decodeRecord() {
+        return codec.decode(record);
+    }
+}
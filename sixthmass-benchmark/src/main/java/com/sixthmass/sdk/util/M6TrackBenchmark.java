@@ -0,0 +1,75 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end M6Pipeline.track (SixthMass.track) throughput: caller thread capture and ring buffer publish, while the consumer thread
+ * journals events and sends them in batches through the fake HTTP transport
+ *
+ * When producers outrun the consumer the ring buffer fills and events are dropped (still measured, track never
+ * blocks). Pipeline metrics printed after each run show how many events made it.
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class M6TrackBenchmark {
+
+    private Map<String, String> properties;
+
+    @Setup
+    public void setup() throws Exception {
+        M6Pipeline.start(M6Fixtures.config());
+        M6Pipeline.startSession();
+        properties = M6Fixtures.properties();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.out.println();
+        System.out.println(M6Fixtures.config().getMetrics());
+    }
+
+    @Benchmark
+    public void track() {
+        M6Pipeline.track("view_product", properties);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void trackFromFourThreads() {
+        M6Pipeline.track("view_product", properties);
+    }
+}
@@ -0,0 +1,75 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending a batch through M6HttpTransport with fake HTTP (no network): request setup, UTF-8 encoding and gzip
+ *
+ * @since 0.0.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class M6TransportBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int events;
+
+    private M6HttpTransport transport;
+
+    private String payload;
+
+    @Setup
+    public void setup() throws Exception {
+        M6FakeHttp.install();
+        transport = new M6HttpTransport();
+        List<M6Task> tasks = M6Fixtures.backlog(events);
+        M6JsonWriter writer = new M6JsonWriter(new StringBuilder());
+        writer.beginArray();
+        for (M6Task task : tasks) {
+            task.writeJson(writer);
+        }
+        writer.endArray();
+        payload = writer.getBuffer().toString();
+    }
+
+    @Benchmark
+    public String postUncompressed() throws Exception {
+        return transport.post(M6Util.ENDPOINT_BULK_EVENTS, payload, -1);
+    }
+
+    @Benchmark
+    public String postCompressed() throws Exception {
+        return transport.post(M6Util.ENDPOINT_BULK_EVENTS, payload, 0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter for failed uploads
+ *
+ * Delay after n-th consecutive failure is random between 0 and min(max, base * 2^n) so that many devices
+ * failing at the same time don't come back at the same time.
+ *
+ * Not thread safe, each sender has it's own instance.
+ *
+ * @since 0.0.5
+ */
+final class M6Backoff {
+
+    /**
+     * Default delay after the first failure
+     */
+    static final long DEFAULT_BASE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * Default upper bound of the delay
+     */
+    static final long DEFAULT_MAX_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final long baseNanos;
+
+    private final long maxNanos;
+
+    private final Random random = new Random();
+
+    /**
+     * Number of consecutive failures
+     */
+    private int failures;
+
+    M6Backoff() {
+        this(DEFAULT_BASE_NANOS, DEFAULT_MAX_NANOS);
+    }
+
+    M6Backoff(long baseNanos, long maxNanos) {
+        this.baseNanos = baseNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Registers a failure and returns how long to wait before next attempt
+     *
+     * @param retryAfterMillis delay requested by the server (Retry-After) or -1
+     * @return delay in nanoseconds
+     */
+    long onFailure(long retryAfterMillis) {
+        long ceiling = maxNanos;
+        if (failures < 62 && (baseNanos << failures) >>> failures == baseNanos) {
+            ceiling = Math.min(maxNanos, baseNanos << failures);
+        }
+        failures++;
+        long delay = (long) (random.nextDouble() * ceiling);
+        if (retryAfterMillis >= 0) {
+            // server knows better, but never wait less than it asked for
+            delay = Math.max(delay, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+        return delay;
+    }
+
+    /**
+     * Resets the backoff after successful attempt
+     */
+    void onSuccess() {
+        failures = 0;
+    }
+
+    /**
+     * @return number of consecutive failures
+     */
+    int getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,351 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends events from the journal to SixthMass servers in batches
+ *
+ * Keeps track of events appended since the last upload and decides (based on M6FlushPolicy) when it's time to flush.
+ * Each batch is one request with up to max events or max bytes. Batch is acknowledged in the journal
+ * as a whole once the server confirms the request.
+ *
+ * Batches are sent as an envelope: values shared by all events (user, session and device) once in the header and only
+ * event specific values per event. Batch is closed whenever the shared values change. If the server doesn't support
+ * the envelope endpoint events are sent as JSON array of complete events instead.
+ *
+ * Failed uploads are retried with exponential backoff and jitter (honoring server's Retry-After). While the circuit
+ * breaker for the endpoint is open no upload is attempted and events are only journaled.
+ *
+ * Uploader is not thread safe. It runs on the consumer thread (M6TaskEmitter)
+ *
+ * @since 0.0.5
+ */
+final class M6BatchUploader {
+
+    /**
+     * Journal holding events to send
+     */
+    private final M6Journal journal;
+
+    /**
+     * Codec decoding journal records
+     */
+    private final M6TaskCodec codec;
+
+    /**
+     * SDK configuration (flush policy)
+     */
+    private final M6Config config;
+
+    /**
+     * Number of events appended since last upload
+     */
+    private int pendingEvents;
+
+    /**
+     * Approximate size of events appended since last upload
+     */
+    private long pendingBytes;
+
+    /**
+     * Time (System.nanoTime) when the oldest pending event was appended
+     */
+    private long pendingSince;
+
+    /**
+     * Upload requested regardless of the policy (e.g. events left in the journal from previous run)
+     */
+    private boolean flushRequested;
+
+    /**
+     * Writer reused for all batches
+     */
+    private final M6JsonWriter json = new M6JsonWriter(new StringBuilder(16 * 1024));
+
+    /**
+     * Delays between failed uploads
+     */
+    private final M6Backoff backoff = new M6Backoff();
+
+    /**
+     * No upload is attempted before this time (System.nanoTime) after failed upload
+     */
+    private long retryAt;
+
+    /**
+     * True when last upload failed
+     */
+    private boolean failed;
+
+    /**
+     * Timestamps of events in the batch being sent (for event age metrics)
+     */
+    private long[] timestamps = new long[64];
+
+    /**
+     * False once server answered that it doesn't support batch envelope (events are then sent as JSON array)
+     */
+    private boolean envelopeSupported = true;
+
+    M6BatchUploader(M6Journal journal, M6TaskCodec codec, M6Config config) {
+        this.journal = journal;
+        this.codec = codec;
+        this.config = config;
+    }
+
+    /**
+     * Notifies uploader about an event appended to the journal
+     *
+     * @param bytes size of the journal record
+     * @param now current System.nanoTime
+     */
+    void onAppended(int bytes, long now) {
+        if (pendingEvents == 0) {
+            pendingSince = now;
+        }
+        pendingEvents++;
+        pendingBytes += bytes;
+    }
+
+    /**
+     * Requests upload of everything in the journal on next occasion
+     */
+    void requestFlush() {
+        flushRequested = true;
+    }
+
+    /**
+     * Checks if there are events waiting to be sent (regardless of the flush policy and retry delay)
+     *
+     * @return true if events were appended or flush was requested since last successful upload
+     */
+    boolean hasPending() {
+        return pendingEvents > 0 || flushRequested;
+    }
+
+    /**
+     * Checks if pending events should be sent now
+     *
+     * @param now current System.nanoTime
+     * @return true if one of the flush policy limits was reached
+     */
+    boolean isFlushDue(long now) {
+        return nanosUntilFlush(now) == 0;
+    }
+
+    /**
+     * Time until next upload is due
+     *
+     * @param now current System.nanoTime
+     * @return nanoseconds until flush (0 if due now, Long.MAX_VALUE if nothing is pending)
+     */
+    long nanosUntilFlush(long now) {
+        if (pendingEvents == 0 && !flushRequested) {
+            return Long.MAX_VALUE;
+        }
+        if (failed && now - retryAt < 0) {
+            return retryAt - now;
+        }
+        // while circuit is open events are only journaled
+        long circuit = config.getTransport().nanosUntilAllowed(envelopeSupported ? M6Util.ENDPOINT_BATCH : M6Util.ENDPOINT_BULK_EVENTS);
+        if (circuit > 0) {
+            return circuit;
+        }
+        M6FlushPolicy policy = config.getFlushPolicy();
+        if (flushRequested || pendingEvents >= policy.getMaxEvents() || pendingBytes >= policy.getMaxBytes()) {
+            return 0;
+        }
+        long waited = now - pendingSince;
+        long maxAge = TimeUnit.MILLISECONDS.toNanos(policy.getMaxAgeMillis());
+        return waited >= maxAge ? 0 : maxAge - waited;
+    }
+
+    /**
+     * Sends everything not yet acknowledged in the journal in batches
+     *
+     * Stops between batches when tasks with higher priority are waiting or the deadline passed (rest of the journal
+     * is sent on next upload, flush stays requested)
+     *
+     * @param now current System.nanoTime
+     * @param preemptingQueue queue with tasks of higher priority (may be null)
+     * @return false if sending failed (unsent events stay in the journal)
+     * @throws IOException Exception reading or acknowledging the journal
+     */
+    boolean upload(long now, M6RingBuffer<M6Task> preemptingQueue) throws IOException {
+        return upload(now, preemptingQueue, 0);
+    }
+
+    /**
+     * Sends everything not yet acknowledged in the journal in batches, no new batch is started after the deadline
+     *
+     * @param now current System.nanoTime
+     * @param preemptingQueue queue with tasks of higher priority (may be null)
+     * @param deadline System.nanoTime after which uploading stops (0 for none)
+     * @return false if sending failed (unsent events stay in the journal)
+     * @throws IOException Exception reading or acknowledging the journal
+     */
+    boolean upload(long now, M6RingBuffer<M6Task> preemptingQueue, long deadline) throws IOException {
+        M6FlushPolicy policy = config.getFlushPolicy();
+        StringBuilder batch = json.getBuffer();
+        int batches = 0;
+        while (true) {
+            if (batches++ > 0 && ((preemptingQueue != null && !preemptingQueue.isEmpty())
+                    || (deadline != 0 && System.nanoTime() - deadline >= 0))) {
+                flushRequested = true;
+                return true;
+            }
+            boolean envelope = envelopeSupported;
+            M6Task first = null;
+            int count = 0;
+            int records = 0;
+            int undecodable = 0;
+            json.reset();
+            if (!envelope) {
+                json.beginArray();
+            }
+            byte[] record;
+            while (count < policy.getMaxEvents() && batch.length() < policy.getMaxBytes() && (record = journal.read()) != null) {
+                records++;
+                M6Task task = codec.decode(record);
+                if (task == null) {
+                    undecodable++; // acknowledged with the rest of the batch
+                    continue;
+                }
+                if (envelope && first != null && !first.hasSameContext(task)) {
+                    // header is shared by the whole batch, event goes to the next one
+                    journal.unread();
+                    break;
+                }
+                int mark = batch.length();
+                try {
+                    if (envelope && first == null) {
+                        json.beginObject().name("header");
+                        task.writeHeaderJson(json);
+                        json.name("events").beginArray();
+                    }
+                    if (envelope) {
+                        task.writeEventJson(json);
+                    } else {
+                        task.writeJson(json);
+                    }
+                    if (first == null) {
+                        first = task;
+                    }
+                    if (count == timestamps.length) {
+                        timestamps = Arrays.copyOf(timestamps, count * 2);
+                    }
+                    timestamps[count++] = task.timestamp != null ? task.timestamp : 0;
+                } catch (Exception e) {
+                    json.rollback(mark);
+                    undecodable++;
+                    M6Log.e("SixthMass", "Can't convert event to json: " + task.eventName, e);
+                }
+            }
+            if (records == 0) {
+                break;
+            }
+            json.endArray();
+            if (envelope && first != null) {
+                json.endObject();
+            }
+
+            if (count > 0) {
+                String endpoint = envelope ? M6Util.ENDPOINT_BATCH : M6Util.ENDPOINT_BULK_EVENTS;
+                try {
+                    config.getTransport().post(endpoint, batch.toString(), config.getCompressionThreshold());
+                    M6Log.i("SixthMass", "Sent batch of " + count + " events");
+                    onSent(count);
+                } catch (M6HttpException e) {
+                    if (envelope && isUnsupported(e.getCode())) {
+                        // server doesn't know the envelope format, same events are sent again in legacy format
+                        M6Log.w("SixthMass", "Batch envelope not supported (" + e.getCode() + "), falling back to JSON array of events");
+                        envelopeSupported = false;
+                        journal.rewind();
+                        continue;
+                    }
+                    if (e.isRetryable()) {
+                        return retryLater(now, count, e.getRetryAfterMillis(), e);
+                    }
+                    // server will never accept this batch, retrying it would block all following events
+                    M6Log.e("SixthMass", "Batch of " + count + " events rejected and dropped: " + e.getMessage());
+                    config.onEventsDropped(count);
+                } catch (IOException e) {
+                    return retryLater(now, count, -1, e);
+                }
+            }
+            // counted once the batch is acknowledged, a retried batch reads the same records again
+            int skipped = journal.takeSkipped();
+            if (skipped + undecodable > 0) {
+                M6Log.w("SixthMass", "Dropped " + skipped + " corrupted and " + undecodable + " undecodable events");
+                config.onEventsDropped(skipped + undecodable);
+            }
+            journal.ack();
+        }
+        backoff.onSuccess();
+        failed = false;
+        flushRequested = false;
+        pendingEvents = 0;
+        pendingBytes = 0;
+        return true;
+    }
+
+    /**
+     * Response codes meaning the server doesn't support batch envelope endpoint
+     *
+     * @param code HTTP response code
+     * @return true for 404, 405 and 501
+     */
+    private static boolean isUnsupported(int code) {
+        return code == 404 || code == 405 || code == 501;
+    }
+
+    /**
+     * Records metrics of acknowledged batch
+     *
+     * @param count number of events in the batch
+     */
+    private void onSent(int count) {
+        M6Metrics metrics = config.metrics();
+        metrics.eventsSent.add(count);
+        long now = config.getClock().currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            metrics.ackAge.record(now - timestamps[i]);
+        }
+    }
+
+    /**
+     * Leaves the batch in the journal and schedules next attempt with exponential backoff
+     *
+     * @param now current System.nanoTime
+     * @param count number of events in failed batch
+     * @param retryAfterMillis delay requested by server or -1
+     * @param e failure
+     * @return always false
+     */
+    private boolean retryLater(long now, int count, long retryAfterMillis, IOException e) {
+        config.metrics().eventsRetried.add(count);
+        journal.rewind();
+        failed = true;
+        long delay = backoff.onFailure(retryAfterMillis);
+        retryAt = now + delay;
+        M6Log.w("SixthMass", "Upload failed (" + backoff.getFailures() + " in a row), next attempt in "
+                + TimeUnit.NANOSECONDS.toSeconds(delay) + "s: " + e.getMessage());
+        return false;
+    }
+}
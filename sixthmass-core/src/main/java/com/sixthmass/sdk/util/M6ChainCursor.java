@@ -0,0 +1,110 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Name and time of the last event which entered the pipeline
+ *
+ * Each new event is linked to the previous one (previousEvent, previousTimestamp) in constant time from this cursor,
+ * journaled events are never read again for linking. Cursor is persisted in the state store so the chain continues
+ * across app restarts. Launch event starts a new chain.
+ *
+ * Cursor is not thread safe. It's used on the consumer thread (M6TaskEmitter) only
+ *
+ * @since 0.0.5
+ */
+final class M6ChainCursor {
+
+    /**
+     * Name of the last event (null when there is none yet)
+     */
+    private String eventName;
+
+    /**
+     * Time of the last event
+     */
+    private Long timestamp;
+
+    /**
+     * True when cursor moved since it was last saved
+     */
+    private boolean dirty;
+
+    /**
+     * Reading the cursor saved in the state store. Cursor saved in Shared Preferences by earlier versions is moved
+     * to the state store
+     *
+     * @param state state store
+     * @param prefReader SDK storage (Shared Preferences on Android)
+     * @return cursor (empty if none was saved)
+     */
+    static M6ChainCursor read(M6StateStore state, M6Storage prefReader) {
+        M6ChainCursor cursor = new M6ChainCursor();
+        if (state.getPreviousEvent() != null) {
+            cursor.eventName = state.getPreviousEvent();
+            cursor.timestamp = state.getPreviousTimestamp();
+        } else if (prefReader.contains(M6Util.SHARED_PREFERENCES_PREVIOUS_EVENT)) {
+            cursor.eventName = prefReader.getString(M6Util.SHARED_PREFERENCES_PREVIOUS_EVENT, null);
+            cursor.timestamp = prefReader.getLong(M6Util.SHARED_PREFERENCES_PREVIOUS_TIMESTAMP, 0);
+            cursor.dirty = true;
+            cursor.save(state);
+            prefReader.edit()
+                    .remove(M6Util.SHARED_PREFERENCES_PREVIOUS_EVENT)
+                    .remove(M6Util.SHARED_PREFERENCES_PREVIOUS_TIMESTAMP)
+                    .apply();
+        }
+        return cursor;
+    }
+
+    /**
+     * Links the task to the previous event (unless it's a launch event) and moves the cursor to the task
+     *
+     * @param task new task
+     */
+    void link(M6Task task) {
+        if (eventName != null && !M6Util.EVENT_NAME_LAUNCH.equals(task.eventName)) {
+            task.previousEvent = eventName;
+            task.previousTimestamp = timestamp;
+        }
+        advance(task);
+    }
+
+    /**
+     * Moves the cursor to the task without linking it (e.g. task already linked by older SDK version)
+     *
+     * @param task last task
+     */
+    void advance(M6Task task) {
+        if (task.eventName == null) {
+            return;
+        }
+        eventName = task.eventName;
+        timestamp = task.timestamp;
+        dirty = true;
+    }
+
+    /**
+     * Saving the cursor to the state store if it moved. Called after linked tasks were written to the journal
+     *
+     * @param state state store
+     */
+    void save(M6StateStore state) {
+        if (!dirty) {
+            return;
+        }
+        state.setPreviousEvent(eventName, timestamp != null ? timestamp : 0);
+        dirty = false;
+    }
+}
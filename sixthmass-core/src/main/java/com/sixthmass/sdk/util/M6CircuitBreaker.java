@@ -0,0 +1,121 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for a single endpoint
+ *
+ * After a number of consecutive failures the circuit opens and no request is sent to the endpoint until
+ * the open period is over. Then a single trial request is let through (half open). Success closes the circuit,
+ * failure opens it again for twice as long (up to the maximum).
+ *
+ * @since 0.0.5
+ */
+final class M6CircuitBreaker {
+
+    /**
+     * Consecutive failures needed to open the circuit
+     */
+    static final int FAILURE_THRESHOLD = 5;
+
+    static final long MIN_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    static final long MAX_OPEN_NANOS = TimeUnit.MINUTES.toNanos(15);
+
+    /**
+     * Consecutive failures
+     */
+    private int failures;
+
+    /**
+     * True while circuit is open or half open
+     */
+    private boolean open;
+
+    /**
+     * System.nanoTime until which circuit stays open
+     */
+    private long openUntil;
+
+    /**
+     * Length of the current open period
+     */
+    private long openNanos = MIN_OPEN_NANOS;
+
+    /**
+     * True while a trial request is in flight (half open)
+     */
+    private boolean trial;
+
+    /**
+     * Checks if request may be sent and marks it as trial request when circuit is half open
+     *
+     * @param now current System.nanoTime
+     * @return false when circuit is open
+     */
+    synchronized boolean allowRequest(long now) {
+        if (!open) {
+            return true;
+        }
+        if (now - openUntil < 0 || trial) {
+            return false;
+        }
+        trial = true;
+        return true;
+    }
+
+    /**
+     * @param now current System.nanoTime
+     * @return nanoseconds until a request will be allowed again (0 if allowed now)
+     */
+    synchronized long nanosUntilAllowed(long now) {
+        if (!open) {
+            return 0;
+        }
+        if (trial) {
+            return MIN_OPEN_NANOS;
+        }
+        return Math.max(0, openUntil - now);
+    }
+
+    synchronized void onSuccess() {
+        failures = 0;
+        open = false;
+        trial = false;
+        openNanos = MIN_OPEN_NANOS;
+    }
+
+    /**
+     * @param now current System.nanoTime
+     */
+    synchronized void onFailure(long now) {
+        failures++;
+        if (trial) {
+            // trial request failed, staying open for longer
+            trial = false;
+            openNanos = Math.min(MAX_OPEN_NANOS, openNanos * 2);
+            openUntil = now + openNanos;
+        } else if (!open && failures >= FAILURE_THRESHOLD) {
+            open = true;
+            openUntil = now + openNanos;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,35 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Wall and monotonic clock
+ *
+ * @since 0.0.5
+ */
+public interface M6Clock {
+
+    /**
+     * @return current time in ms since epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Monotonic time (never goes back, not affected by wall clock changes). Only valid in the same process
+     *
+     * @return ms since some fixed point
+     */
+    long elapsedRealtime();
+}
@@ -0,0 +1,440 @@
+package com.sixthmass.sdk.util;
+/*
+  Created by Igor Rendulic on 4/26/17.
+  
+  Copyright 2017 
+  
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+    
+ */
+
+/**
+ * Configuration properties
+ *
+ * This object holds all configuration options for the SDK. It's singleton so only 1 instance exists
+ *
+ * Creating the instance does no I/O. Stored state (user profile) is loaded lazily by load, normally on the consumer
+ * thread right after the pipeline starts, or by the first caller which needs it (getUserProfile)
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class M6Config {
+
+    /**
+     * Library version
+     */
+    private static final String LIB_VERSION = "android_0.0.3";
+
+    /**
+     * Default inactivity timeout of a session (30 minutes)
+     */
+    public static final long DEFAULT_SESSION_TIMEOUT = 30 * 60 * 1000;
+
+    /**
+     * This object instance
+     */
+    private static volatile M6Config me;
+
+    /**
+     * Clock stamping events tracked before init, the same one the platform uses after init
+     */
+    private static volatile M6Clock platformClock = M6JvmPlatform.CLOCK;
+
+    /**
+     * Platform the SDK runs on (storage, device values, logging, clock)
+     */
+    private final M6Platform platform;
+
+    /**
+     * ClientId or Token defined by SixthMass platform
+     */
+    private String token;
+
+    /**
+     * Library version
+     */
+    private String libVersion;
+
+    /**
+     * User Profile as defined by this SDK and augmented by user
+     */
+    private volatile SixthMassUserProfile userProfile;
+
+    /**
+     * True once stored state was loaded
+     */
+    private volatile boolean loaded;
+
+    /**
+     * Serializes loading of stored state and opening of the state store (slow I/O is not done while holding this
+     * object's lock)
+     */
+    private final Object loadLock = new Object();
+
+    /**
+     * Binary file with user id and cursors (opened on first use, guarded by loadLock)
+     */
+    private M6StateStore stateStore;
+
+    /**
+     * User and session shared by all events of the current session
+     */
+    private volatile M6SessionContext sessionContext = new M6SessionContext(null, null, 0);
+
+    /**
+     * Device values shared by all events until locale or timezone changes (null when it has to be captured again)
+     */
+    private volatile M6DeviceContext deviceContext;
+
+    /**
+     * When and how many events are sent in one batch
+     */
+    private volatile M6FlushPolicy flushPolicy = M6FlushPolicy.DEFAULT;
+
+    /**
+     * App in background longer than this (ms) starts a new session when it comes back
+     */
+    private volatile long sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+
+    /**
+     * Storage budget for unsent events
+     */
+    private volatile M6StorageQuota storageQuota = M6StorageQuota.DEFAULT;
+
+    /**
+     * Metrics of the event pipeline
+     */
+    private final M6Metrics metrics = new M6Metrics();
+
+    /**
+     * Payloads of at least this size (in characters) are sent gzip compressed. Negative value disables compression
+     */
+    private volatile int compressionThreshold = 1024;
+
+    /**
+     * HTTP transport keeping connections to SixthMass servers alive
+     */
+    private final M6HttpTransport transport = new M6HttpTransport(M6HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST, metrics);
+
+    /**
+     * Instance method that creates a singleton with initial parameters
+     *
+     * Returns immediately, stored state is loaded later (see load)
+     *
+     * @param platform platform the SDK runs on (Android binding or M6JvmPlatform)
+     * @param token ClientId or Token defined by SixthMass platform
+     * @return Singleton object
+     */
+    public synchronized static M6Config instance(M6Platform platform, String token) {
+        if (me == null) {
+            me = new M6Config(platform, token);
+            platform.attach(me);
+        }
+        return me;
+    }
+
+    /**
+     * Instance method used to retrieve the configuration
+     *
+     * Not synchronized (single volatile read) as it's called on every tracked event
+     *
+     * @return This object
+     * @throws SixthMassException Exception when SDK not initailized first
+     */
+    public static M6Config instance() throws SixthMassException {
+        M6Config config = me;
+        if (config == null) {
+            throw new SixthMassException("Config not initialized");
+        }
+        return config;
+    }
+
+    /**
+     * Configuration or null if SDK not initialized yet (events tracked before init)
+     *
+     * @return This object or null
+     */
+    static M6Config instanceOrNull() {
+        return me;
+    }
+
+    /**
+     * Sets the clock of the platform for events tracked before init. Platform binding sets it before the app can
+     * track anything, otherwise pre-init events would be ordered by a different monotonic clock than the rest
+     *
+     * @param clock clock of the platform (M6JvmPlatform clock by default)
+     * @since 0.0.5
+     */
+    public static void setPlatformClock(M6Clock clock) {
+        platformClock = clock;
+    }
+
+    /**
+     * @return clock stamping events tracked before init
+     */
+    static M6Clock getPlatformClock() {
+        return platformClock;
+    }
+
+    /**
+     * Contructor and initializer with platform and ClientId (token)
+     *
+     * @param platform platform the SDK runs on
+     * @param token Client Id
+     */
+    private M6Config(M6Platform platform, String token) {
+        this.platform = platform;
+        this.token = token;
+        this.libVersion = LIB_VERSION;
+
+        M6Log.setLogger(platform.getLogger());
+    }
+
+    /**
+     * User profile is by default generated on init
+     *
+     * This user profile object can be manipulated by SDK user. Waits for stored state if it's still being loaded
+     *
+     * @return SixthMassUserProfile
+     */
+    public SixthMassUserProfile getUserProfile() {
+        load();
+        return this.userProfile;
+    }
+
+    /**
+     * Loads stored state (user profile, generated and stored on first run) once. Called on the consumer thread when
+     * the pipeline starts, callers needing the state before that load it themselves
+     *
+     * Session started before the user was known is continued with the user id
+     */
+    void load() {
+        if (this.loaded) {
+            return;
+        }
+        synchronized (this.loadLock) {
+            if (this.loaded) {
+                return;
+            }
+            SixthMassUserProfile profile = M6Util.getUserProfile(this);
+            synchronized (this) {
+                this.userProfile = profile;
+                M6SessionContext session = this.sessionContext;
+                this.sessionContext = new M6SessionContext(profile.getUserId(), session.getSessionId(),
+                        session.getSessionStart(), session.getMonotonicStart());
+            }
+            this.loaded = true;
+        }
+    }
+
+    M6Storage getStorage() {
+        return this.platform.getStorage();
+    }
+
+    /**
+     * State store in the SDK files directory, opened on first use (off the main thread, see load)
+     *
+     * @return state store
+     */
+    M6StateStore getStateStore() {
+        synchronized (this.loadLock) {
+            if (this.stateStore == null) {
+                this.stateStore = M6StateStore.open(getStorage().getFilesDir());
+            }
+            return this.stateStore;
+        }
+    }
+
+    M6DeviceInfo getDeviceInfo() {
+        return this.platform.getDeviceInfo();
+    }
+
+    M6Clock getClock() {
+        return this.platform.getClock();
+    }
+
+    String getToken() {
+        return this.token;
+    }
+
+    String getLibVersion() {
+        return this.libVersion;
+    }
+
+    /**
+     * Starting a new session for current user
+     *
+     * @param sessionId UUID of the new session
+     * @param sessionStart time of the session start
+     * @param monotonicStart M6Clock.elapsedRealtime at the session start
+     */
+    synchronized void startSession(String sessionId, long sessionStart, long monotonicStart) {
+        String userId = this.userProfile == null ? null : this.userProfile.getUserId();
+        this.sessionContext = new M6SessionContext(userId, sessionId, sessionStart, monotonicStart);
+    }
+
+    String getSessionId() {
+        return this.sessionContext.getSessionId();
+    }
+
+    M6SessionContext getSessionContext() {
+        return this.sessionContext;
+    }
+
+    /**
+     * Session context of an event tracked before the user was known (before init or before state was loaded), with
+     * the user id filled in. Runs on the consumer thread
+     *
+     * @param captured session context captured when the event was tracked (null if tracked before init)
+     * @return session context with user id
+     */
+    M6SessionContext withUser(M6SessionContext captured) {
+        load();
+        M6SessionContext current = this.sessionContext;
+        if (captured == null) {
+            // no session before init
+            return new M6SessionContext(current.getUserId(), null, 0);
+        }
+        if (M6Util.equal(captured.getSessionId(), current.getSessionId())
+                && captured.getSessionStart() == current.getSessionStart()) {
+            return current;
+        }
+        return new M6SessionContext(current.getUserId(), captured.getSessionId(), captured.getSessionStart(),
+                captured.getMonotonicStart());
+    }
+
+    /**
+     * Device context valid at the given time. Captured again only after locale/timezone change or when timezone
+     * offset might have changed (daylight saving time)
+     *
+     * @param now time of the event
+     * @return device context
+     */
+    M6DeviceContext getDeviceContext(long now) {
+        M6DeviceContext current = this.deviceContext;
+        if (current == null || !current.isValid(now)) {
+            current = M6DeviceContext.capture(this.platform.getDeviceInfo(), this.token, this.libVersion, now);
+            this.deviceContext = current;
+        }
+        return current;
+    }
+
+    /**
+     * Drops the device context so it's captured again for the next event (locale or timezone changed)
+     */
+    void resetDeviceContext() {
+        this.deviceContext = null;
+    }
+
+    /**
+     * Changing when and how many events are sent in one batch
+     *
+     * @param flushPolicy flush policy (not null)
+     */
+    public void setFlushPolicy(M6FlushPolicy flushPolicy) {
+        if (flushPolicy == null) {
+            throw new IllegalArgumentException("Flush policy can not be null");
+        }
+        this.flushPolicy = flushPolicy;
+    }
+
+    M6FlushPolicy getFlushPolicy() {
+        return this.flushPolicy;
+    }
+
+    /**
+     * Changing how long app may stay in background before a new session starts (screen changes and short breaks
+     * continue the current session)
+     *
+     * @param sessionTimeout inactivity timeout in ms (not negative)
+     */
+    public void setSessionTimeout(long sessionTimeout) {
+        if (sessionTimeout < 0) {
+            throw new IllegalArgumentException("Session timeout can not be negative");
+        }
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    long getSessionTimeout() {
+        return this.sessionTimeout;
+    }
+
+    /**
+     * Changing how much storage unsent events may take and which are dropped first when they don't fit
+     *
+     * @param storageQuota storage quota (not null)
+     */
+    public void setStorageQuota(M6StorageQuota storageQuota) {
+        if (storageQuota == null) {
+            throw new IllegalArgumentException("Storage quota can not be null");
+        }
+        this.storageQuota = storageQuota;
+    }
+
+    M6StorageQuota getStorageQuota() {
+        return this.storageQuota;
+    }
+
+    /**
+     * Number of events dropped since the SDK was initialized (pre-init buffer or task queue full, storage quota exceeded,
+     * rejected by server)
+     *
+     * @return number of dropped events
+     */
+    public long getDroppedEvents() {
+        return this.metrics.eventsDropped.sum();
+    }
+
+    void onEventsDropped(long count) {
+        this.metrics.eventsDropped.add(count);
+    }
+
+    /**
+     * Current metrics of the SDK (queue, journal, sent events, latencies)
+     *
+     * @return metrics snapshot
+     */
+    public M6MetricsSnapshot getMetrics() {
+        return this.metrics.snapshot();
+    }
+
+    /**
+     * Setting listener receiving metrics after each upload attempt
+     *
+     * @param listener listener (null to remove)
+     */
+    public void setMetricsListener(M6MetricsListener listener) {
+        this.metrics.setListener(listener);
+    }
+
+    M6Metrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Changing minimum payload size for gzip compression of requests
+     *
+     * @param compressionThreshold minimum payload size in characters, negative value disables compression
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    int getCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    M6HttpTransport getTransport() {
+        return this.transport;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped counter for metrics recorded from many threads
+ *
+ * Each thread adds to one of a few cells picked by it's id, cells are spread over separate cache lines so threads
+ * don't contend on a single value. Reading sums the cells (value is not a snapshot across cells).
+ *
+ * @since 0.0.5
+ */
+final class M6Counter {
+
+    /**
+     * Number of cells (power of two)
+     */
+    static final int STRIPES = 8;
+
+    /**
+     * Distance between cells in longs (64 bytes, one cache line)
+     */
+    static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        cells.getAndIncrement(stripe() * PADDING);
+    }
+
+    void add(long value) {
+        cells.getAndAdd(stripe() * PADDING, value);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Cell of the current thread
+     *
+     * @return stripe index
+     */
+    static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+}
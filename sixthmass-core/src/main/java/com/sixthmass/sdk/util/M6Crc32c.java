@@ -0,0 +1,80 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * CRC32C (Castagnoli) checksum of journal records
+ *
+ * java.util.zip.CRC32C exists only since Java 9 (not on Android), so it's computed here with lookup tables,
+ * eight bytes per step (slicing-by-8).
+ *
+ * @since 0.0.5
+ */
+final class M6Crc32c {
+
+    /**
+     * Reversed Castagnoli polynomial
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * TABLE[k][b]: CRC of byte b followed by k zero bytes
+     */
+    private static final int[][] TABLE = new int[8][256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc >>> 1) ^ ((crc & 1) != 0 ? POLYNOMIAL : 0);
+            }
+            TABLE[0][b] = crc;
+        }
+        for (int b = 0; b < 256; b++) {
+            for (int k = 1; k < 8; k++) {
+                int previous = TABLE[k - 1][b];
+                TABLE[k][b] = (previous >>> 8) ^ TABLE[0][previous & 0xFF];
+            }
+        }
+    }
+
+    private M6Crc32c() {
+    }
+
+    /**
+     * @param buffer bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @return CRC32C of the bytes
+     */
+    static int compute(byte[] buffer, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        int end = offset + length;
+        int[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3];
+        int[] t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+        while (end - offset >= 8) {
+            int low = crc ^ ((buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8
+                    | (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24);
+            crc = t7[low & 0xFF] ^ t6[(low >>> 8) & 0xFF] ^ t5[(low >>> 16) & 0xFF] ^ t4[low >>> 24]
+                    ^ t3[buffer[offset + 4] & 0xFF] ^ t2[buffer[offset + 5] & 0xFF]
+                    ^ t1[buffer[offset + 6] & 0xFF] ^ t0[buffer[offset + 7] & 0xFF];
+            offset += 8;
+        }
+        while (offset < end) {
+            crc = (crc >>> 8) ^ t0[(crc ^ buffer[offset++]) & 0xFF];
+        }
+        return ~crc;
+    }
+}
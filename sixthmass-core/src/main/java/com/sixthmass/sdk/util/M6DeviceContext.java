@@ -0,0 +1,203 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Immutable snapshot of device and SDK values shared by all events
+ *
+ * Snapshot is taken by M6Config and reused by every task until locale or timezone changes (or until the next
+ * quarter of an hour when timezone offset might change because of daylight saving time).
+ *
+ * @since 0.0.5
+ */
+public final class M6DeviceContext implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Offsets change only on full quarter of an hour
+     */
+    private static final long REFRESH_INTERVAL = 15 * 60 * 1000;
+
+    /**
+     * Last deserialized context, equal deserialized contexts share this instance
+     */
+    private static volatile M6DeviceContext last;
+
+    /**
+     * Client ID or Token
+     */
+    private final String clientId;
+
+    /**
+     * Library version (SDK internal version)
+     */
+    private final String libVer;
+
+    /**
+     * Timezone id
+     */
+    private final String timezone;
+
+    /**
+     * Timezone offset in minutes
+     */
+    private final Integer tzOffset;
+
+    /**
+     * Operating system (Android for Android binding)
+     */
+    private final String os;
+
+    /**
+     * Browser - device manufacturer (Build.MANUFACTURER on Android)
+     */
+    private final String browser;
+
+    /**
+     * Operating system version (Build.VERSION.RELEASE on Android)
+     */
+    private final String browserVersion;
+
+    /**
+     * Device model (Build.MODEL on Android)
+     */
+    private final String device;
+
+    /**
+     * Locale.getDisplayLanguage()
+     */
+    private final String language;
+
+    /**
+     * Time (ms since epoch) after which snapshot must be taken again
+     */
+    private final transient long validUntil;
+
+    M6DeviceContext(String clientId, String libVer, String timezone, Integer tzOffset, String os, String browser,
+                    String browserVersion, String device, String language, long validUntil) {
+        this.clientId = clientId;
+        this.libVer = libVer;
+        this.timezone = timezone;
+        this.tzOffset = tzOffset;
+        this.os = os;
+        this.browser = browser;
+        this.browserVersion = browserVersion;
+        this.device = device;
+        this.language = language;
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * Takes a new snapshot of device values
+     *
+     * @param deviceInfo device values of the platform
+     * @param clientId client id (token)
+     * @param libVer SDK version
+     * @param now current time in ms since epoch
+     * @return device context
+     */
+    static M6DeviceContext capture(M6DeviceInfo deviceInfo, String clientId, String libVer, long now) {
+        TimeZone tz = TimeZone.getDefault();
+        return new M6DeviceContext(clientId, libVer, tz.getID(), Math.round(tz.getOffset(now) / 1000 / 60), deviceInfo.getOs(),
+                deviceInfo.getManufacturer(), deviceInfo.getOsVersion(), deviceInfo.getModel(), Locale.getDefault().getDisplayLanguage(),
+                (now / REFRESH_INTERVAL + 1) * REFRESH_INTERVAL);
+    }
+
+    boolean isValid(long now) {
+        return now < validUntil;
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    String getLibVer() {
+        return libVer;
+    }
+
+    String getTimezone() {
+        return timezone;
+    }
+
+    Integer getTzOffset() {
+        return tzOffset;
+    }
+
+    String getOs() {
+        return os;
+    }
+
+    String getBrowser() {
+        return browser;
+    }
+
+    String getBrowserVersion() {
+        return browserVersion;
+    }
+
+    String getDevice() {
+        return device;
+    }
+
+    String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Deserialized tasks share equal contexts instead of holding a copy each
+     *
+     * @return shared instance
+     */
+    private Object readResolve() {
+        M6DeviceContext shared = last;
+        if (this.equals(shared)) {
+            return shared;
+        }
+        last = this;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof M6DeviceContext)) {
+            return false;
+        }
+        M6DeviceContext other = (M6DeviceContext) o;
+        return M6Util.equal(clientId, other.clientId) && M6Util.equal(libVer, other.libVer)
+                && M6Util.equal(timezone, other.timezone) && M6Util.equal(tzOffset, other.tzOffset)
+                && M6Util.equal(os, other.os) && M6Util.equal(browser, other.browser)
+                && M6Util.equal(browserVersion, other.browserVersion) && M6Util.equal(device, other.device)
+                && M6Util.equal(language, other.language);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 17;
+        hash = 31 * hash + (clientId == null ? 0 : clientId.hashCode());
+        hash = 31 * hash + (timezone == null ? 0 : timezone.hashCode());
+        hash = 31 * hash + (tzOffset == null ? 0 : tzOffset.hashCode());
+        hash = 31 * hash + (device == null ? 0 : device.hashCode());
+        hash = 31 * hash + (language == null ? 0 : language.hashCode());
+        return hash;
+    }
+}
@@ -0,0 +1,48 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Device values sent with every event (see M6DeviceContext) and with the user profile
+ *
+ * @since 0.0.5
+ */
+public interface M6DeviceInfo {
+
+    /**
+     * @return operating system name (e.g. Android)
+     */
+    String getOs();
+
+    /**
+     * @return operating system version
+     */
+    String getOsVersion();
+
+    /**
+     * @return device manufacturer
+     */
+    String getManufacturer();
+
+    /**
+     * @return device model
+     */
+    String getModel();
+
+    /**
+     * @return stable id of the device (may be null)
+     */
+    String getDeviceId();
+}
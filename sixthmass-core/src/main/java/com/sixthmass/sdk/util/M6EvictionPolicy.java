@@ -0,0 +1,99 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which events are dropped first when unsent events don't fit into the storage quota
+ *
+ * Each event gets a priority by its name. Events with the lowest priority are dropped first, oldest first among
+ * events with equal priority. When all stored events have the same priority whole oldest journal segments are
+ * dropped without reading them.
+ *
+ * @since 0.0.5
+ */
+public abstract class M6EvictionPolicy {
+
+    /**
+     * Drops oldest events first
+     */
+    public static final M6EvictionPolicy DROP_OLDEST = new M6EvictionPolicy() {
+        @Override
+        public int priority(String eventName) {
+            return 0;
+        }
+
+        @Override
+        boolean hasPriorities() {
+            return false;
+        }
+    };
+
+    /**
+     * Priority of the event
+     *
+     * @param eventName name of the event
+     * @return priority (events with lower priority are dropped first)
+     */
+    public abstract int priority(String eventName);
+
+    /**
+     * False when all events have the same priority (evicting doesn't have to read event names)
+     *
+     * @return true if priority depends on the event name
+     */
+    boolean hasPriorities() {
+        return true;
+    }
+
+    /**
+     * Drops events with the lowest priority first
+     *
+     * @param priorities priority per event name
+     * @param defaultPriority priority of events not in the map
+     * @return eviction policy
+     */
+    public static M6EvictionPolicy dropLowestPriority(Map<String,Integer> priorities, final int defaultPriority) {
+        final Map<String,Integer> copy = new HashMap<>(priorities);
+        return new M6EvictionPolicy() {
+            @Override
+            public int priority(String eventName) {
+                Integer priority = copy.get(eventName);
+                return priority != null ? priority : defaultPriority;
+            }
+        };
+    }
+
+    /**
+     * Drops events not in the allowlist first. Allowed events are dropped only when nothing else is left
+     *
+     * @param allowedEvents names of events to keep
+     * @return eviction policy
+     */
+    public static M6EvictionPolicy dropNotAllowed(Set<String> allowedEvents) {
+        final Set<String> copy = Collections.unmodifiableSet(new HashSet<>(allowedEvents));
+        return new M6EvictionPolicy() {
+            @Override
+            public int priority(String eventName) {
+                return copy.contains(eventName) ? 1 : 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps unsent events in the journal within the storage quota
+ *
+ * Segments with all events older than max age are dropped whole (only segment timestamps are checked). Once events
+ * take more than max bytes, events are dropped until they take at most LOW_WATER_PERCENT of max bytes, so the
+ * following appends don't start another pass right away. Whole oldest segments are dropped if the eviction policy
+ * gives all events the same priority. Otherwise events with the lowest priority stored are removed from sealed
+ * segments, oldest first, until the rest fits. Priorities are taken from the event counts of each segment kept by
+ * the journal, only segments holding events to drop are read and rewritten. Every dropped event is counted.
+ *
+ * Evictor is not thread safe. It runs on the consumer thread (M6TaskEmitter) between uploads
+ *
+ * @since 0.0.5
+ */
+final class M6Evictor {
+
+    /**
+     * Share of max bytes (in percent) unsent events are reduced to once they take more than max bytes
+     */
+    static final int LOW_WATER_PERCENT = 75;
+
+    /**
+     * Journal holding unsent events
+     */
+    private final M6Journal journal;
+
+    /**
+     * SDK configuration (storage quota)
+     */
+    private final M6Config config;
+
+    /**
+     * Reads event names of journal records (keys records are counted by)
+     */
+    private final M6Journal.RecordKeys eventNames;
+
+    M6Evictor(M6Journal journal, final M6TaskCodec codec, M6Config config) {
+        this.journal = journal;
+        this.config = config;
+        this.eventNames = new M6Journal.RecordKeys() {
+            @Override
+            public String keyOf(byte[] record, int length) {
+                return codec.decodeEventName(record, length);
+            }
+        };
+    }
+
+    /**
+     * Drops expired events and events over the size budget
+     *
+     * Cheap when quota is not exceeded (no record is read)
+     *
+     * @param now current time in milliseconds
+     * @return number of dropped events
+     * @throws IOException Exception reading or rewriting the journal
+     */
+    int enforce(long now) throws IOException {
+        M6StorageQuota quota = config.getStorageQuota();
+        int expired = journal.expire(now - quota.getMaxAgeMillis());
+        int evicted = 0;
+        if (journal.pendingBytes() > quota.getMaxBytes()) {
+            long target = quota.getMaxBytes() / 100 * LOW_WATER_PERCENT;
+            M6EvictionPolicy policy = quota.getEvictionPolicy();
+            evicted = policy.hasPriorities() ? dropByPriority(target, policy) : dropOldest(target);
+        }
+        if (expired + evicted > 0) {
+            config.onEventsDropped(expired + evicted);
+            M6Log.w("SixthMass", "Storage quota exceeded, dropped " + expired + " expired and " + evicted + " surplus events");
+        }
+        return expired + evicted;
+    }
+
+    private int dropOldest(long target) throws IOException {
+        int dropped = 0;
+        while (journal.pendingBytes() > target) {
+            dropped += journal.dropOldest();
+        }
+        return dropped;
+    }
+
+    private int dropByPriority(long target, M6EvictionPolicy policy) throws IOException {
+        int dropped = 0;
+        // the only seal of the pass, nothing is appended until it ends
+        journal.seal();
+        while (journal.pendingBytes() > target) {
+            // lowest and highest priority of stored events by the event counts of sealed segments
+            int sealed = journal.segmentCount() - 1;
+            List<Map<String, Integer>> counts = new ArrayList<>(sealed);
+            int lowest = Integer.MAX_VALUE;
+            int highest = Integer.MIN_VALUE;
+            Set<String> lowestNames = new HashSet<>();
+            for (int i = 0; i < sealed; i++) {
+                Map<String, Integer> segment = journal.keyCounts(i, eventNames);
+                counts.add(segment);
+                for (String eventName : segment.keySet()) {
+                    int priority = priority(policy, eventName);
+                    if (priority < lowest) {
+                        lowest = priority;
+                        lowestNames.clear();
+                    }
+                    if (priority == lowest) {
+                        lowestNames.add(eventName);
+                    }
+                    highest = Math.max(highest, priority);
+                }
+            }
+            if (lowest >= highest) {
+                // all remaining events are equal
+                return dropped + dropOldest(target);
+            }
+            // afterwards no sealed segment holds events of the lowest priority, next round drops the next one
+            for (int i = 0; i < sealed && journal.pendingBytes() > target; i++) {
+                if (!Collections.disjoint(counts.get(i).keySet(), lowestNames)) {
+                    dropped += journal.compact(i, eventNames, lowestNames);
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Priority of the event (records which can't be decoded have the lowest priority)
+     */
+    private static int priority(M6EvictionPolicy policy, String eventName) {
+        return eventName != null ? policy.priority(eventName) : Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,182 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * M6Storage kept in memory and written to a properties file in the given directory (journals are created in the
+ * same directory)
+ *
+ * Values are typed (s: string, l: long) so getAll returns them the same way SharedPreferences does. Every commit
+ * or apply rewrites the file atomically, apply just like commit is synchronous.
+ *
+ * @since 0.0.5
+ */
+final class M6FileStorage implements M6Storage {
+
+    private static final String FILE_NAME = "sixthmass.properties";
+
+    private final File directory;
+
+    private final File file;
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    M6FileStorage(File directory) {
+        this.directory = directory;
+        this.file = new File(directory, FILE_NAME);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            M6Log.w("SixthMass", "Can't create storage directory " + directory);
+        }
+        read();
+    }
+
+    @Override
+    public File getFilesDir() {
+        return directory;
+    }
+
+    @Override
+    public synchronized String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return Collections.unmodifiableMap(new HashMap<>(values));
+    }
+
+    @Override
+    public Editor edit() {
+        return new FileEditor();
+    }
+
+    /**
+     * Applying editor changes and writing the file
+     *
+     * @param changes changed values (null value removes the key)
+     * @return true if file was written
+     */
+    private synchronized boolean write(Map<String, Object> changes) {
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                values.remove(change.getKey());
+            } else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            properties.setProperty(entry.getKey(), (value instanceof Long ? "l:" : "s:") + value);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, null);
+            M6Util.writeAtomically(file, out.toByteArray());
+            return true;
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't write " + file, e);
+            return false;
+        }
+    }
+
+    private void read() {
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't read " + file, e);
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            try {
+                if (value.startsWith("l:")) {
+                    values.put(key, Long.parseLong(value.substring(2)));
+                } else if (value.startsWith("s:")) {
+                    values.put(key, value.substring(2));
+                }
+            } catch (NumberFormatException e) {
+                M6Log.w("SixthMass", "Invalid stored value of " + key);
+            }
+        }
+    }
+
+    private final class FileEditor implements Editor {
+
+        /**
+         * Changed values (null removes the key)
+         */
+        private final Map<String, Object> changes = new HashMap<>();
+
+        @Override
+        public Editor putString(String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return write(changes);
+        }
+
+        @Override
+        public void apply() {
+            write(changes);
+        }
+    }
+}
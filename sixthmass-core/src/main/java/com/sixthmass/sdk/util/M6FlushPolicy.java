@@ -0,0 +1,74 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Flush policy for sending events in batches
+ *
+ * Pending events are sent as soon as one of the limits is reached: number of events, bytes or age of the oldest
+ * pending event. The same count and bytes limits also cap the size of a single batch request.
+ *
+ * @since 0.0.5
+ */
+public final class M6FlushPolicy {
+
+    /**
+     * Default policy: 50 events, 64 KB or 10 seconds
+     */
+    public static final M6FlushPolicy DEFAULT = new M6FlushPolicy(50, 64 * 1024, 10000);
+
+    /**
+     * Maximum number of events in one batch
+     */
+    private final int maxEvents;
+
+    /**
+     * Maximum size of one batch in bytes (soft limit, batch is closed once it's reached)
+     */
+    private final int maxBytes;
+
+    /**
+     * Maximum time an event waits before it's sent (in milliseconds)
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * Constructor
+     *
+     * @param maxEvents maximum number of events in one batch (at least 1)
+     * @param maxBytes maximum size of one batch in bytes
+     * @param maxAgeMillis maximum time in milliseconds an event waits before it's sent (0 sends immediately)
+     */
+    public M6FlushPolicy(int maxEvents, int maxBytes, long maxAgeMillis) {
+        if (maxEvents < 1 || maxBytes < 1 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Invalid flush policy");
+        }
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+}
@@ -17,14 +17,19 @@ package com.sixthmass.sdk.util;
  */
 
 /**
- * Callback interface to handle app foreground events
+ * Callback interface to handle app foreground and background transitions
  */
 public interface M6ForegroundCallback {
 
     /**
-     * contract to handle an activty event when app enters foreground
-     * The notification is received from M6Config (M6ActivityLifecycleCallbacks)
+     * contract to handle an activty event when app enters foreground (first activity started)
+     * The notification is received from the platform (M6ActivityLifecycleCallbacks on Android)
      */
     public void appInForeground();
 
+    /**
+     * contract to handle an activity event when app enters background (last activity stopped)
+     */
+    public void appInBackground();
+
 }
@@ -0,0 +1,65 @@
+package com.sixthmass.sdk.util;
+/*
+  Created by Igor Rendulic on 5/13/17.
+  
+  Copyright 2017 
+  
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+    
+ */
+
+/**
+ * Callback handler for when the app comes to foreground or goes to background (session state)
+ *
+ * New session (and launch event) starts when the app comes to foreground for the first time or after it was in
+ * background longer than the session timeout (M6Config.setSessionTimeout). Screen changes and short breaks continue
+ * the current session. Time in background is measured on the monotonic clock.
+ *
+ * Tracked events are flushed as soon as the app goes to background, the process may be killed any time after that.
+ */
+public final class M6ForegroundCallbackHandler implements M6ForegroundCallback {
+
+    /**
+     * How long the consumer may keep uploading after the app went to background
+     */
+    private static final long BACKGROUND_FLUSH_TIMEOUT = 10 * 1000;
+
+    /**
+     * SDK configuration
+     */
+    private final M6Config config;
+
+    /**
+     * M6Clock.elapsedRealtime when app went to background (negative while in foreground)
+     */
+    private long backgroundSince = -1;
+
+    public M6ForegroundCallbackHandler(M6Config config) {
+        this.config = config;
+    }
+
+    @Override
+    public synchronized void appInForeground() {
+        long now = config.getClock().elapsedRealtime();
+        boolean expired = backgroundSince >= 0 && now - backgroundSince >= config.getSessionTimeout();
+        backgroundSince = -1;
+        if (config.getSessionId() == null || expired) {
+            M6Log.i("SixthMass", "App in foreground. Starting new session");
+            M6Pipeline.startSession();
+        }
+    }
+
+    @Override
+    public synchronized void appInBackground() {
+        backgroundSince = config.getClock().elapsedRealtime();
+        M6Pipeline.requestFlush(BACKGROUND_FLUSH_TIMEOUT);
+    }
+}
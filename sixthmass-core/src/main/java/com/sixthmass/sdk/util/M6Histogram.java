@@ -0,0 +1,174 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead histogram with power of two buckets
+ *
+ * Value v (v greater than 0) is counted in bucket 64 - numberOfLeadingZeros(v), so bucket b holds values from
+ * 2^(b-1) to 2^b - 1 and bucket 0 holds zero and negative values. Recording is a single atomic increment in the
+ * stripe of the current thread (see M6Counter) plus adding to the sum.
+ *
+ * @since 0.0.5
+ */
+public final class M6Histogram {
+
+    /**
+     * Number of buckets
+     */
+    static final int BUCKETS = 65;
+
+    /**
+     * Longs per stripe: buckets, sum and padding up to the next cache line
+     */
+    private static final int STRIDE = 80;
+
+    private static final int SUM = BUCKETS;
+
+    private final AtomicLongArray cells = new AtomicLongArray(M6Counter.STRIPES * STRIDE);
+
+    M6Histogram() {
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value value (e.g. latency in nanoseconds)
+     */
+    void record(long value) {
+        int base = M6Counter.stripe() * STRIDE;
+        cells.getAndIncrement(base + bucket(value));
+        cells.getAndAdd(base + SUM, value);
+    }
+
+    /**
+     * Current counts
+     *
+     * @return immutable copy
+     */
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (int stripe = 0; stripe < M6Counter.STRIPES; stripe++) {
+            int base = stripe * STRIDE;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += cells.get(base + i);
+            }
+            sum += cells.get(base + SUM);
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    static int bucket(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Histogram counts at one point in time
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @return number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of recorded values
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return average of recorded values (0 if none)
+         */
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding given percentile
+         *
+         * @param percentile percentile between 0 and 100
+         * @return value not exceeded by given percent of recorded values (within a factor of two, 0 if none)
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        /**
+         * @return upper bound of the highest non-empty bucket (0 if none)
+         */
+        public long getMax() {
+            for (int i = BUCKETS - 1; i > 0; i--) {
+                if (counts[i] > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Number of values in the bucket
+         *
+         * @param bucket bucket index (0 - 64)
+         * @return count
+         */
+        public long getBucketCount(int bucket) {
+            return counts[bucket];
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : (bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99)
+                    + ", max=" + getMax() + "}";
+        }
+    }
+}
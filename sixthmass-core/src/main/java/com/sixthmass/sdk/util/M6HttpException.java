@@ -0,0 +1,63 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.IOException;
+
+/**
+ * Exception when SixthMass server didn't accept the request
+ *
+ * Holds the response code (0 when request wasn't sent because circuit breaker is open)
+ * and the time the server asked us to wait before next attempt (Retry-After)
+ *
+ * @since 0.0.5
+ */
+public final class M6HttpException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * HTTP response code (0 if request was not sent)
+     */
+    private final int code;
+
+    /**
+     * Time to wait before next attempt in milliseconds (-1 if not specified)
+     */
+    private final long retryAfterMillis;
+
+    public M6HttpException(String msg, int code, long retryAfterMillis) {
+        super(msg);
+        this.code = code;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Request can succeed later (not sent, timeout, throttled or server error)
+     *
+     * @return false when server rejected the request itself (other 4xx codes)
+     */
+    public boolean isRetryable() {
+        return code == 0 || code == 408 || code == 429 || code >= 500;
+    }
+}
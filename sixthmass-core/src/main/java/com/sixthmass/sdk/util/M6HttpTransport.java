@@ -0,0 +1,365 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP transport to SixthMass servers
+ *
+ * Connections are kept alive and reused across sends (HttpURLConnection keep-alive pool). For a connection to go
+ * back to the pool the response body (or error body) is always read to the end and closed and the connection is never
+ * disconnected after successful exchange. Only broken connections are disconnected.
+ *
+ * Number of concurrent connections to the same host is limited. Each endpoint has it's own circuit breaker
+ * which stops requests to it after consecutive failures.
+ *
+ * @since 0.0.5
+ */
+public final class M6HttpTransport {
+
+    /**
+     * Default maximum number of concurrent connections per host
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private static final int READ_TIMEOUT = 10000;
+
+    /**
+     * Parsed endpoint urls
+     */
+    private final ConcurrentHashMap<String, URL> urls = new ConcurrentHashMap<>();
+
+    /**
+     * Connection permits per host
+     */
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Circuit breakers per endpoint
+     */
+    private final ConcurrentHashMap<String, M6CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Endpoints which answered 415 to gzip compressed payload
+     */
+    private final ConcurrentHashMap<String, Boolean> uncompressedEndpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of concurrent connections per host
+     */
+    private final int maxConnectionsPerHost;
+
+    /**
+     * Request metrics (status codes, bytes, round trip)
+     */
+    private final M6Metrics metrics;
+
+    public M6HttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxConnectionsPerHost maximum number of concurrent connections per host
+     */
+    public M6HttpTransport(int maxConnectionsPerHost) {
+        this(maxConnectionsPerHost, new M6Metrics());
+    }
+
+    M6HttpTransport(int maxConnectionsPerHost, M6Metrics metrics) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("At least one connection per host required");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Post json payload (single event, batch of events or profile) to SixthMass server
+     *
+     * Single attempt, retrying is up to the caller (see M6Backoff). Request is not sent at all while circuit breaker
+     * for the endpoint is open.
+     *
+     * Payloads of at least compressionThreshold characters are gzip compressed.
+     * If server answers with 415 (Unsupported Media Type) to compressed payload the endpoint is remembered
+     * and payload is sent again uncompressed.
+     *
+     * @param endpoint endpint of the service
+     * @param payload json payload to send
+     * @param compressionThreshold minimum payload size for compression, negative value disables compression
+     * @return string response from the server
+     * @throws M6HttpException Exception when server didn't accept the request or circuit is open
+     * @throws IOException Exception when connection failed
+     */
+    public String post(String endpoint, String payload, int compressionThreshold) throws IOException {
+        M6CircuitBreaker breaker = breaker(endpoint);
+        long now = System.nanoTime();
+        if (!breaker.allowRequest(now)) {
+            throw new M6HttpException("Circuit open for " + endpoint, 0, TimeUnit.NANOSECONDS.toMillis(breaker.nanosUntilAllowed(now)));
+        }
+        try {
+            boolean compress = compressionThreshold >= 0 && payload.length() >= compressionThreshold
+                    && !uncompressedEndpoints.containsKey(endpoint);
+            Response response = execute(endpoint, payload, compress);
+            if (compress && response.code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+                // server doesn't accept compressed payloads, sending again uncompressed
+                M6Log.w("SixthMass", "Compression not supported by " + endpoint);
+                uncompressedEndpoints.put(endpoint, Boolean.TRUE);
+                response = execute(endpoint, payload, false);
+            }
+            // only the attempt answered last counts, 415 answer to the compressed one is not a sent request
+            metrics.bytesSent.add(response.bytes);
+            metrics.bytesSentCompressed.add(response.bytesOnWire);
+            if (response.code >= 200 && response.code < 300) {
+                breaker.onSuccess();
+                return response.body;
+            }
+            M6HttpException error = new M6HttpException("Error sending to " + endpoint + " code: " + response.code + " " + response.body,
+                    response.code, response.retryAfterMillis);
+            if (error.isRetryable()) {
+                breaker.onFailure(System.nanoTime());
+            } else {
+                // server is up, it just doesn't accept this request
+                breaker.onSuccess();
+            }
+            throw error;
+        } catch (M6HttpException e) {
+            throw e;
+        } catch (IOException e) {
+            breaker.onFailure(System.nanoTime());
+            throw e;
+        } catch (RuntimeException e) {
+            // e.g. SecurityException from the connection, trial request must not stay in flight forever
+            breaker.onFailure(System.nanoTime());
+            throw e;
+        }
+    }
+
+    /**
+     * Time until circuit breaker lets requests to the endpoint through
+     *
+     * @param endpoint endpoint url
+     * @return nanoseconds (0 if requests are allowed)
+     */
+    public long nanosUntilAllowed(String endpoint) {
+        return breaker(endpoint).nanosUntilAllowed(System.nanoTime());
+    }
+
+    /**
+     * Single HTTP exchange
+     *
+     * @param endpoint endpoint url
+     * @param payload json payload
+     * @param compress true to gzip the payload
+     * @return response code and body
+     * @throws IOException Exception when connection failed
+     */
+    private Response execute(String endpoint, String payload, boolean compress) throws IOException {
+        URL url = urls.get(endpoint);
+        if (url == null) {
+            url = new URL(endpoint);
+            urls.put(endpoint, url);
+        }
+        Semaphore permits = permits(url);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for connection");
+        }
+        HttpURLConnection connection = null;
+        long start = System.nanoTime();
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+
+            Response response = new Response();
+            byte[] body;
+            if (compress) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length() / 4);
+                CountingOutputStream uncompressed = new CountingOutputStream(new GZIPOutputStream(compressed, 8192));
+                Writer writer = new OutputStreamWriter(uncompressed, "UTF-8");
+                writer.write(payload);
+                writer.close();
+                body = compressed.toByteArray();
+                response.bytes = uncompressed.count;
+            } else {
+                body = payload.getBytes("UTF-8");
+                response.bytes = body.length;
+            }
+            response.bytesOnWire = body.length;
+            // no streaming mode: headers and body go out in one write. With streaming mode the body followed in a
+            // separate small segment which on a kept alive connection waited for the delayed ACK of the headers
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+
+            response.code = connection.getResponseCode();
+            metrics.onHttpStatus(response.code);
+            response.retryAfterMillis = retryAfter(connection);
+            // body has to be consumed completely for connection to be reused
+            response.body = readFully(response.code >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            metrics.uploadLatency.record(System.nanoTime() - start);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            // broken connection must not go back to the pool
+            if (connection != null) {
+                connection.disconnect();
+            }
+            throw e;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Circuit breaker for the endpoint
+     *
+     * @param endpoint endpoint url
+     * @return circuit breaker
+     */
+    private M6CircuitBreaker breaker(String endpoint) {
+        M6CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            M6CircuitBreaker created = new M6CircuitBreaker();
+            breaker = breakers.putIfAbsent(endpoint, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Parses Retry-After header (delay in seconds or HTTP date)
+     *
+     * @param connection connection with response
+     * @return delay in milliseconds or -1 if not present
+     */
+    private static long retryAfter(HttpURLConnection connection) {
+        String value = connection.getHeaderField("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = connection.getHeaderFieldDate("Retry-After", -1);
+            return date < 0 ? -1 : Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Semaphore limiting connections to the host of the url
+     *
+     * @param url endpoint url
+     * @return semaphore
+     */
+    private Semaphore permits(URL url) {
+        String host = url.getHost() + ":" + url.getPort();
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxConnectionsPerHost);
+            permits = hostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Reads stream to the end and closes it
+     *
+     * @param in input stream (may be null)
+     * @return content of the stream as UTF-8 string
+     * @throws IOException Exception reading the stream
+     */
+    private static String readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Counts bytes written to the wrapped stream
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Response code and body
+     */
+    private static final class Response {
+        int code;
+        String body;
+        long retryAfterMillis;
+
+        /**
+         * Payload bytes before and after compression
+         */
+        long bytes;
+        long bytesOnWire;
+    }
+}
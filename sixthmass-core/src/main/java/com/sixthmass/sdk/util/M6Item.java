@@ -32,6 +32,11 @@ import java.io.Serializable;
  */
 public final class M6Item implements Serializable {
 
+    /**
+     * Computed UID of 0.0.4 (items are in task lists stored by older versions)
+     */
+    private static final long serialVersionUID = 1199451140443044127L;
+
     /**
      * User defined ID for the purchased item
      */
@@ -59,6 +64,13 @@ public final class M6Item implements Serializable {
         this.q = item.getQuantity();
     }
 
+    M6Item(String id, String n, Double pr, Integer q) {
+        this.id = id;
+        this.n = n;
+        this.pr = pr;
+        this.q = q;
+    }
+
     /**
      * Converts this object to Json
      *
@@ -73,4 +85,19 @@ public final class M6Item implements Serializable {
         json.put("q", this.q);
         return json;
     }
+
+    /**
+     * Writes the same json as toJson straight to the writer
+     *
+     * @param writer json writer
+     * @throws JSONException Exception when conversion failed
+     */
+    void writeJson(M6JsonWriter writer) throws JSONException {
+        writer.beginObject()
+                .field("n", this.n)
+                .field("id", this.id)
+                .field("pr", this.pr)
+                .field("q", this.q)
+                .endObject();
+    }
 }
@@ -0,0 +1,1105 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only segmented event journal
+ *
+ * Records are appended to the tail segment as [length][CRC32C][payload]. Once tail segment grows over the segment size
+ * a new segment is started. Sent records are acknowledged by moving the ack cursor (segment id, offset) persisted in
+ * the state store and segments completely behind the cursor are deleted whole.
+ *
+ * Oldest and newest record timestamp, size and number of records per key (event name) of every segment are kept in
+ * a small index file so expired or surplus segments can be dropped without reading them. Records can also be dropped
+ * selectively by key by rewriting a sealed segment (see M6Evictor).
+ *
+ * A crash while appending can leave an incomplete record only at the end of the tail segment of the crashed run
+ * (every run starts a new tail). On open only that segment is scanned and truncated at the first incomplete or
+ * corrupted record, records before it are kept. A record failing its checksum later while reading is skipped. When
+ * the length of a record is corrupted the rest of its segment is skipped (the tail is sealed first, so appends
+ * continue in a new segment). Skipped records are counted (see takeSkipped). Segments written by earlier versions
+ * ([length][payload], without checksum) are still read.
+ *
+ * Journal is not thread safe. It's owned by the single consumer thread (M6TaskEmitter)
+ *
+ * @since 0.0.5
+ */
+final class M6Journal {
+
+    /**
+     * Segment file header magic ("M6J" + version)
+     */
+    private static final int SEGMENT_MAGIC = 0x4D364A02;
+
+    /**
+     * Magic of segments written by earlier versions (records without checksum)
+     */
+    private static final int LEGACY_SEGMENT_MAGIC = 0x4D364A01;
+
+    /**
+     * Size of the segment header (magic)
+     */
+    static final int HEADER_SIZE = 4;
+
+    /**
+     * Size of the record header (length, CRC32C of the payload)
+     */
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Size of the record header in legacy segments (length)
+     */
+    private static final int LEGACY_RECORD_HEADER_SIZE = 4;
+
+    /**
+     * Tail segment is rolled once it grows over this size
+     */
+    private static final long SEGMENT_SIZE = 256 * 1024;
+
+    /**
+     * Single record can't be bigger than this (protects reader from reading garbage length)
+     */
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Ack cursor file written by earlier versions (moved to the state store)
+     */
+    private static final String CURSOR_FILE = "ack.cursor";
+
+    private static final String INDEX_FILE = "segments.index";
+
+    /**
+     * First int of the index with record counts per key (index of earlier versions starts with number of segments)
+     */
+    private static final int INDEX_WITH_KEYS = -2;
+
+    /**
+     * Longest key counted in the index (segment with a longer key is counted again when needed)
+     */
+    private static final int MAX_INDEXED_KEY = 1024;
+
+    /**
+     * Indexes of segment stats values
+     */
+    private static final int MIN_TIMESTAMP = 0;
+    private static final int MAX_TIMESTAMP = 1;
+    private static final int SIZE = 2;
+
+    /**
+     * Journal directory
+     */
+    private final File directory;
+
+    /**
+     * Store persisting the ack cursor
+     */
+    private final M6StateStore state;
+
+    /**
+     * Which of the cursors in the state store belongs to this journal
+     */
+    private final int cursor;
+
+    /**
+     * Ids of existing segments in ascending order (last one is tail)
+     */
+    private final List<Long> segments = new ArrayList<>();
+
+    /**
+     * Oldest record timestamp, newest record timestamp and size per segment (Long.MIN_VALUE as newest when
+     * segment has no records yet). Size of the tail is kept in tailSize
+     */
+    private final Map<Long, long[]> stats = new HashMap<>();
+
+    /**
+     * Number of records per key in each segment. Segments missing here (index of an earlier version, tail of
+     * a crashed run, records appended without key) are counted by reading them when first needed
+     */
+    private final Map<Long, Map<String, Integer>> recordCounts = new HashMap<>();
+
+    /**
+     * Tail segment writer
+     */
+    private DataOutputStream writer;
+
+    /**
+     * Size of the tail segment including buffered bytes
+     */
+    private long tailSize;
+
+    /**
+     * Persisted ack cursor
+     */
+    private long ackSegment;
+    private long ackOffset;
+
+    /**
+     * Read position (always at or after ack cursor)
+     */
+    private long readSegment;
+    private long readOffset;
+
+    /**
+     * Read position before the last returned record
+     */
+    private long lastSegment;
+    private long lastOffset;
+
+    /**
+     * Open reader positioned at read position (null when closed)
+     */
+    private DataInputStream reader;
+
+    /**
+     * Record header size of the segment open for reading
+     */
+    private int readerRecordHeader;
+
+    /**
+     * Corrupted records skipped since last takeSkipped
+     */
+    private int skipped;
+
+    /**
+     * Position after the last skipped record (a record read again after rewind is counted once)
+     */
+    private long skippedSegment = -1;
+    private long skippedOffset;
+
+    /**
+     * Opens (or creates) the journal in given directory
+     *
+     * A new tail segment is always started so appends never land behind a partially written record
+     *
+     * @param directory journal directory
+     * @param state store persisting the ack cursor
+     * @param cursor cursor of this journal in the state store (e.g. M6StateStore.EVENT_JOURNAL)
+     * @throws IOException Exception when journal can't be created
+     */
+    M6Journal(File directory, M6StateStore state, int cursor) throws IOException {
+        this.directory = directory;
+        this.state = state;
+        this.cursor = cursor;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create journal directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        M6Log.w("SixthMass", "Unknown file in journal: " + name);
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        readIndex();
+        readCursor();
+        recoverTail();
+        roll();
+        if (!segments.contains(ackSegment)) {
+            ackSegment = segments.get(0);
+            ackOffset = HEADER_SIZE;
+        }
+        rewind();
+    }
+
+    /**
+     * Appends a record to the tail segment. Record is buffered until flush
+     *
+     * @param record record payload
+     * @throws IOException Exception writing the record
+     */
+    void append(byte[] record) throws IOException {
+        append(record, record.length);
+    }
+
+    /**
+     * Appends first length bytes of the buffer as a record
+     *
+     * @param buffer buffer holding record payload
+     * @param length length of the record
+     * @throws IOException Exception writing the record
+     */
+    void append(byte[] buffer, int length) throws IOException {
+        append(buffer, length, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends first length bytes of the buffer as a record
+     *
+     * @param buffer buffer holding record payload
+     * @param length length of the record
+     * @param timestamp time of the record (used to expire whole segments)
+     * @throws IOException Exception writing the record
+     */
+    void append(byte[] buffer, int length, long timestamp) throws IOException {
+        append(buffer, length, timestamp, null);
+        // key not known, records of the tail are counted by reading them if needed
+        recordCounts.remove(segments.get(segments.size() - 1));
+    }
+
+    /**
+     * Appends first length bytes of the buffer as a record counted under given key
+     *
+     * @param buffer buffer holding record payload
+     * @param length length of the record
+     * @param timestamp time of the record (used to expire whole segments)
+     * @param key key of the record, the same RecordKeys returns for it (e.g. event name)
+     * @throws IOException Exception writing the record
+     */
+    void append(byte[] buffer, int length, long timestamp, String key) throws IOException {
+        if (tailSize >= SEGMENT_SIZE) {
+            roll();
+        }
+        writer.writeInt(length);
+        writer.writeInt(M6Crc32c.compute(buffer, 0, length));
+        writer.write(buffer, 0, length);
+        tailSize += RECORD_HEADER_SIZE + length;
+        long id = segments.get(segments.size() - 1);
+        long[] tail = stats.get(id);
+        tail[MIN_TIMESTAMP] = Math.min(tail[MIN_TIMESTAMP], timestamp);
+        tail[MAX_TIMESTAMP] = Math.max(tail[MAX_TIMESTAMP], timestamp);
+        Map<String, Integer> counts = recordCounts.get(id);
+        if (counts != null) {
+            increment(counts, key);
+        }
+    }
+
+    /**
+     * Flushes appended records to the file system
+     *
+     * @throws IOException Exception writing the records
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Reads next not yet read record
+     *
+     * Only records failing their checksum or length check are skipped. On any other error read position stays
+     * at the record, so nothing is acknowledged past it
+     *
+     * @return record payload or null when everything appended was read
+     * @throws IOException Exception reading the record (read again later)
+     */
+    byte[] read() throws IOException {
+        while (true) {
+            if (reader == null) {
+                openReader();
+            }
+            try {
+                int length = reader.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    // next record can't be found, the rest of the segment is skipped
+                    M6Log.e("SixthMass", "Corrupted record length " + length + " at " + readOffset + " in segment "
+                            + readSegment + ", rest of the segment skipped");
+                    closeReader();
+                    long segment = readSegment;
+                    if (!nextSegment()) {
+                        // tail is still appended to behind the corrupted record
+                        seal();
+                        nextSegment();
+                    }
+                    onSkipped(segment, Long.MAX_VALUE);
+                    continue;
+                }
+                int checksum = readerRecordHeader == RECORD_HEADER_SIZE ? reader.readInt() : 0;
+                byte[] record = new byte[length];
+                reader.readFully(record);
+                if (readerRecordHeader == RECORD_HEADER_SIZE && checksum != M6Crc32c.compute(record, 0, length)) {
+                    M6Log.e("SixthMass", "Corrupted record at " + readOffset + " in segment " + readSegment + " skipped");
+                    readOffset += readerRecordHeader + length;
+                    onSkipped(readSegment, readOffset);
+                    continue;
+                }
+                lastSegment = readSegment;
+                lastOffset = readOffset;
+                readOffset += readerRecordHeader + length;
+                return record;
+            } catch (EOFException e) {
+                // end of segment (or partially written record at the end of it)
+                closeReader();
+                if (!nextSegment()) {
+                    return null;
+                }
+            } catch (IOException e) {
+                // read position is unchanged, next read tries the same record again
+                closeReader();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Number of corrupted records skipped while reading since the last call. Every skipped record is counted once,
+     * even if it's read again after rewind
+     *
+     * @return number of skipped records (a skipped rest of a segment counts as one)
+     */
+    int takeSkipped() {
+        int count = skipped;
+        skipped = 0;
+        return count;
+    }
+
+    /**
+     * Acknowledges all records read so far. Persists the cursor and deletes segments fully behind it
+     *
+     * @throws IOException Exception persisting cursor
+     */
+    void ack() throws IOException {
+        if (ackSegment == readSegment && ackOffset == readOffset) {
+            return;
+        }
+        ackSegment = readSegment;
+        ackOffset = readOffset;
+        writeCursor();
+        if (segments.size() > 1 && segments.get(0) < ackSegment) {
+            while (segments.size() > 1 && segments.get(0) < ackSegment) {
+                deleteSegment(segments.remove(0));
+            }
+            writeIndex();
+        }
+    }
+
+    /**
+     * Size of records not yet acknowledged
+     *
+     * @return bytes
+     */
+    long pendingBytes() {
+        long bytes = 0;
+        for (Long id : segments) {
+            if (id >= ackSegment) {
+                bytes += sizeOf(id) - HEADER_SIZE;
+            }
+        }
+        return bytes - (ackOffset - HEADER_SIZE);
+    }
+
+    /**
+     * Number of records not yet acknowledged. Skips over all pending records, meant for flush and shutdown only
+     *
+     * @return number of records
+     */
+    int pendingRecords() {
+        int count = 0;
+        for (Long id : segments) {
+            if (id >= ackSegment) {
+                count += countRecords(id, id == ackSegment ? ackOffset : HEADER_SIZE);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of segments (last one is tail)
+     *
+     * @return number of segments
+     */
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Starts a new tail segment if the current one has records, so all records are in sealed segments
+     *
+     * @throws IOException Exception creating segment file
+     */
+    void seal() throws IOException {
+        if (tailSize > HEADER_SIZE) {
+            roll();
+        }
+    }
+
+    /**
+     * Drops oldest segments with all records older than cutoff (records are not read, only counted)
+     *
+     * @param cutoff records older than this are expired
+     * @return number of unacknowledged records dropped
+     * @throws IOException Exception persisting cursor
+     */
+    int expire(long cutoff) throws IOException {
+        int dropped = 0;
+        while (true) {
+            long[] oldest = stats.get(segments.get(0));
+            if (oldest[MAX_TIMESTAMP] == Long.MIN_VALUE && segments.size() > 1) {
+                dropFirst(); // sealed segment without records
+                continue;
+            }
+            if (oldest[MAX_TIMESTAMP] == Long.MIN_VALUE || oldest[MAX_TIMESTAMP] >= cutoff) {
+                return dropped;
+            }
+            if (segments.size() == 1) {
+                roll();
+            }
+            dropped += dropFirst();
+        }
+    }
+
+    /**
+     * Drops the oldest segment with records not yet acknowledged (tail is sealed first if it's the only one)
+     *
+     * @return number of unacknowledged records dropped
+     * @throws IOException Exception persisting cursor
+     */
+    int dropOldest() throws IOException {
+        if (segments.size() == 1) {
+            seal();
+            if (segments.size() == 1) {
+                return 0;
+            }
+        }
+        return dropFirst();
+    }
+
+    /**
+     * Number of records per key in the segment (acknowledged records of the segment included). Counted on append and
+     * kept in the index, the segment is read only if its counts are not known
+     *
+     * @param index index of the segment
+     * @param keys reads keys of records
+     * @return record count per key
+     */
+    Map<String, Integer> keyCounts(int index, RecordKeys keys) {
+        long id = segments.get(index);
+        Map<String, Integer> counts = recordCounts.get(id);
+        if (counts == null) {
+            counts = countKeys(id, keys);
+            if (index < segments.size() - 1) {
+                recordCounts.put(id, counts);
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Rewrites sealed segment without records with given keys. Acknowledged records are dropped
+     *
+     * Ack cursor is moved to the start of the rewritten segment before it replaces the old one, so a crash in between
+     * can only cause already sent records to be sent again.
+     *
+     * @param index index of the segment (not tail)
+     * @param keys reads keys of records
+     * @param dropKeys records with these keys are dropped
+     * @return number of unacknowledged records dropped
+     * @throws IOException Exception rewriting the segment
+     */
+    int compact(int index, RecordKeys keys, Set<String> dropKeys) throws IOException {
+        if (index >= segments.size() - 1) {
+            throw new IllegalArgumentException("Tail segment can't be compacted");
+        }
+        long id = segments.get(index);
+        if (id < ackSegment) {
+            return 0;
+        }
+        closeReader();
+        File file = segmentFile(id);
+        File temp = new File(file.getPath() + ".tmp");
+        int dropped = 0;
+        long size = HEADER_SIZE;
+        Map<String, Integer> counts = new HashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+        try {
+            FileOutputStream fileOut = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 8192));
+            try {
+                out.writeInt(SEGMENT_MAGIC);
+                int recordHeader = recordHeaderSize(in.readInt());
+                if (recordHeader > 0) {
+                    skipFully(in, (id == ackSegment ? ackOffset : HEADER_SIZE) - HEADER_SIZE);
+                    byte[] record = new byte[512];
+                    while (true) {
+                        int length = in.readInt();
+                        if (length < 0 || length > MAX_RECORD_SIZE) {
+                            break;
+                        }
+                        int checksum = recordHeader == RECORD_HEADER_SIZE ? in.readInt() : 0;
+                        if (length > record.length) {
+                            record = new byte[Math.max(length, record.length * 2)];
+                        }
+                        in.readFully(record, 0, length);
+                        int computed = M6Crc32c.compute(record, 0, length);
+                        if (recordHeader == RECORD_HEADER_SIZE && checksum != computed) {
+                            break; // rest of the segment can't be trusted (same as reading it)
+                        }
+                        String key = keys.keyOf(record, length);
+                        if (!dropKeys.contains(key)) {
+                            out.writeInt(length);
+                            out.writeInt(computed);
+                            out.write(record, 0, length);
+                            size += RECORD_HEADER_SIZE + length;
+                            increment(counts, key);
+                        } else {
+                            dropped++;
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // end of segment (or partially written record at the end of it)
+            } finally {
+                out.flush();
+                fileOut.getFD().sync();
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (id == ackSegment) {
+            ackOffset = HEADER_SIZE;
+            writeCursor();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Can't rename " + temp + " to " + file);
+        }
+        stats.get(id)[SIZE] = size;
+        recordCounts.put(id, counts);
+        writeIndex();
+        rewind();
+        return dropped;
+    }
+
+    /**
+     * Moves read position back to the ack cursor (records read but not acknowledged will be read again)
+     */
+    void rewind() {
+        closeReader();
+        readSegment = ackSegment;
+        readOffset = ackOffset;
+    }
+
+    /**
+     * Moves read position back before the last returned record (it will be returned again by next read)
+     */
+    void unread() {
+        closeReader();
+        readSegment = lastSegment;
+        readOffset = lastOffset;
+    }
+
+    /**
+     * Closes the journal
+     */
+    void close() {
+        closeReader();
+        try {
+            writer.close();
+            writeIndex();
+        } catch (IOException e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts a new tail segment
+     *
+     * @throws IOException Exception creating segment file
+     */
+    private void roll() throws IOException {
+        long id = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        if (writer != null) {
+            writer.close();
+            stats.get(segments.get(segments.size() - 1))[SIZE] = tailSize;
+        }
+        FileOutputStream out = new FileOutputStream(segmentFile(id));
+        writer = new DataOutputStream(new BufferedOutputStream(out, 8192));
+        writer.writeInt(SEGMENT_MAGIC);
+        writer.flush();
+        tailSize = HEADER_SIZE;
+        segments.add(id);
+        stats.put(id, new long[] {Long.MAX_VALUE, Long.MIN_VALUE, HEADER_SIZE});
+        recordCounts.put(id, new HashMap<String, Integer>());
+        writeIndex();
+    }
+
+    /**
+     * Drops the oldest segment (must not be tail) and moves ack cursor to the next one
+     *
+     * @return number of unacknowledged records in dropped segment
+     * @throws IOException Exception persisting cursor
+     */
+    private int dropFirst() throws IOException {
+        long id = segments.get(0);
+        int dropped = id < ackSegment ? 0 : countRecords(id, id == ackSegment ? ackOffset : HEADER_SIZE);
+        closeReader();
+        segments.remove(0);
+        if (id >= ackSegment) {
+            ackSegment = segments.get(0);
+            ackOffset = HEADER_SIZE;
+            writeCursor();
+        }
+        deleteSegment(id);
+        writeIndex();
+        rewind();
+        return dropped;
+    }
+
+    /**
+     * Counts records in the segment by skipping over them (payloads are not read)
+     *
+     * @param id segment id
+     * @param offset offset of the first record to count
+     * @return number of records
+     */
+    private int countRecords(long id, long offset) {
+        int count = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(id)), 8192));
+            int recordHeader = recordHeaderSize(in.readInt());
+            if (recordHeader < 0) {
+                return 0;
+            }
+            skipFully(in, offset - HEADER_SIZE);
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                skipFully(in, recordHeader - 4 + length);
+                count++;
+            }
+        } catch (EOFException e) {
+            // end of segment (or partially written record at the end of it)
+        } catch (IOException e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    M6Log.e("SixthMass", e.getMessage(), e);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts records of the segment per key by reading them
+     *
+     * @param id segment id
+     * @param keys reads keys of records
+     * @return record count per key
+     */
+    private Map<String, Integer> countKeys(long id, RecordKeys keys) {
+        Map<String, Integer> counts = new HashMap<>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(id)), 8192));
+            int recordHeader = recordHeaderSize(in.readInt());
+            if (recordHeader < 0) {
+                return counts;
+            }
+            byte[] record = new byte[512];
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                int checksum = recordHeader == RECORD_HEADER_SIZE ? in.readInt() : 0;
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+                if (recordHeader == RECORD_HEADER_SIZE && checksum != M6Crc32c.compute(record, 0, length)) {
+                    break;
+                }
+                increment(counts, keys.keyOf(record, length));
+            }
+        } catch (EOFException e) {
+            // end of segment (or partially written record at the end of it)
+        } catch (IOException e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    M6Log.e("SixthMass", e.getMessage(), e);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count != null ? count + 1 : 1);
+    }
+
+    /**
+     * Truncates the tail segment of the previous run at the first incomplete or corrupted record. Only this segment
+     * is scanned, sealed segments were complete when the next one was started
+     *
+     * @throws IOException Exception truncating the segment
+     */
+    private void recoverTail() throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        long id = segments.get(segments.size() - 1);
+        File file = segmentFile(id);
+        long fileLength = file.length();
+        if (fileLength < HEADER_SIZE) {
+            // crashed before the header was written, segment holds no records
+            segments.remove(segments.size() - 1);
+            deleteSegment(id);
+            return;
+        }
+        long valid = HEADER_SIZE;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+        try {
+            int recordHeader = recordHeaderSize(in.readInt());
+            if (recordHeader < 0) {
+                return; // not a segment written by this journal, reader skips it
+            }
+            byte[] record = new byte[512];
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                int checksum = recordHeader == RECORD_HEADER_SIZE ? in.readInt() : 0;
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+                if (recordHeader == RECORD_HEADER_SIZE && checksum != M6Crc32c.compute(record, 0, length)) {
+                    break;
+                }
+                valid += recordHeader + length;
+            }
+        } catch (EOFException e) {
+            // incomplete record (or header) at the end of the segment
+        } finally {
+            in.close();
+        }
+        if (valid >= fileLength) {
+            return;
+        }
+        M6Log.w("SixthMass", "Journal segment " + id + " truncated at " + valid + ", " + (fileLength - valid)
+                + " bytes of incomplete record dropped");
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(valid);
+            truncated.getFD().sync();
+        } finally {
+            truncated.close();
+        }
+        stats.get(id)[SIZE] = valid;
+        recordCounts.remove(id);
+        if (ackSegment == id && ackOffset > valid) {
+            ackOffset = valid;
+        }
+    }
+
+    /**
+     * @param magic segment header magic
+     * @return size of record header in the segment, -1 if it's not a journal segment
+     */
+    private static int recordHeaderSize(int magic) {
+        if (magic == SEGMENT_MAGIC) {
+            return RECORD_HEADER_SIZE;
+        }
+        return magic == LEGACY_SEGMENT_MAGIC ? LEGACY_RECORD_HEADER_SIZE : -1;
+    }
+
+    private void deleteSegment(long id) {
+        stats.remove(id);
+        recordCounts.remove(id);
+        File segment = segmentFile(id);
+        if (!segment.delete()) {
+            M6Log.w("SixthMass", "Can't delete journal segment " + segment);
+        }
+    }
+
+    private long sizeOf(long id) {
+        return id == segments.get(segments.size() - 1) ? tailSize : stats.get(id)[SIZE];
+    }
+
+    private static void skipFully(DataInputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * Counts a skipped record unless it was counted before
+     *
+     * @param segment segment of the skipped record
+     * @param end offset after the skipped record (Long.MAX_VALUE for the rest of the segment)
+     */
+    private void onSkipped(long segment, long end) {
+        if (segment > skippedSegment || (segment == skippedSegment && end > skippedOffset)) {
+            skipped++;
+            skippedSegment = segment;
+            skippedOffset = end;
+        }
+    }
+
+    /**
+     * Moves read position to the start of the next segment
+     *
+     * @return false if read position is already in the tail segment
+     */
+    private boolean nextSegment() {
+        int index = segments.indexOf(readSegment);
+        if (index < 0 || index == segments.size() - 1) {
+            return false;
+        }
+        readSegment = segments.get(index + 1);
+        readOffset = HEADER_SIZE;
+        return true;
+    }
+
+    private void openReader() throws IOException {
+        if (!segments.contains(readSegment)) {
+            readSegment = segments.get(0);
+            readOffset = HEADER_SIZE;
+        }
+        FileInputStream in = new FileInputStream(segmentFile(readSegment));
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 8192));
+        try {
+            readerRecordHeader = recordHeaderSize(data.readInt());
+            if (readerRecordHeader >= 0) {
+                skipFully(data, readOffset - HEADER_SIZE);
+                reader = data;
+                return;
+            }
+            M6Log.e("SixthMass", "Not a journal segment: " + readSegment);
+            onSkipped(readSegment, Long.MAX_VALUE);
+        } catch (EOFException e) {
+            // nothing at this position yet
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        data.close();
+        // reading continues with the next segment
+        reader = new DataInputStream(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private void closeReader() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                M6Log.e("SixthMass", e.getMessage(), e);
+            }
+            reader = null;
+        }
+    }
+
+    private void readCursor() throws IOException {
+        ackSegment = segments.isEmpty() ? 0 : segments.get(0);
+        ackOffset = HEADER_SIZE;
+        if (state.hasAckCursor(cursor)) {
+            setCursor(state.getAckSegment(cursor), state.getAckOffset(cursor));
+            return;
+        }
+        File legacy = new File(directory, CURSOR_FILE);
+        if (!legacy.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(legacy));
+            setCursor(in.readLong(), in.readLong());
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't read journal cursor", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    M6Log.e("SixthMass", e.getMessage(), e);
+                }
+            }
+        }
+        writeCursor();
+        if (!legacy.delete()) {
+            M6Log.w("SixthMass", "Can't delete " + legacy);
+        }
+    }
+
+    private void setCursor(long segment, long offset) {
+        if (segments.contains(segment)) {
+            ackSegment = segment;
+            ackOffset = offset;
+        }
+    }
+
+    /**
+     * Reads segment stats. Segments missing in the index (or changed after it was written, e.g. tail of a crashed run)
+     * get file size and modification time instead
+     */
+    private void readIndex() {
+        File index = new File(directory, INDEX_FILE);
+        if (index.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+                int count = in.readInt();
+                boolean withKeys = count == INDEX_WITH_KEYS;
+                if (withKeys) {
+                    count = in.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    long id = in.readLong();
+                    long[] values = new long[] {in.readLong(), in.readLong(), in.readLong()};
+                    Map<String, Integer> counts = withKeys ? readKeyCounts(in) : null;
+                    if (segments.contains(id)) {
+                        stats.put(id, values);
+                        if (counts != null) {
+                            recordCounts.put(id, counts);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                M6Log.e("SixthMass", "Can't read journal index", e);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        M6Log.e("SixthMass", e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        for (Long id : segments) {
+            File file = segmentFile(id);
+            long[] values = stats.get(id);
+            if (values == null || values[SIZE] != file.length()) {
+                long modified = file.lastModified();
+                values = values == null ? new long[] {modified, modified, 0}
+                        : new long[] {Math.min(values[MIN_TIMESTAMP], modified), Math.max(values[MAX_TIMESTAMP], modified), 0};
+                values[SIZE] = file.length();
+                stats.put(id, values);
+                recordCounts.remove(id);
+            }
+        }
+    }
+
+    /**
+     * @return record counts per key or null if not known
+     */
+    private static Map<String, Integer> readKeyCounts(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = in.readBoolean() ? in.readUTF() : null;
+            counts.put(key, in.readInt());
+        }
+        return counts;
+    }
+
+    private static void writeKeyCounts(DataOutputStream out, Map<String, Integer> counts) throws IOException {
+        if (counts != null) {
+            for (String key : counts.keySet()) {
+                if (key != null && key.length() > MAX_INDEXED_KEY) {
+                    counts = null;
+                    break;
+                }
+            }
+        }
+        if (counts == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            out.writeBoolean(count.getKey() != null);
+            if (count.getKey() != null) {
+                out.writeUTF(count.getKey());
+            }
+            out.writeInt(count.getValue());
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + segments.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_WITH_KEYS);
+        out.writeInt(segments.size());
+        for (Long id : segments) {
+            long[] values = stats.get(id);
+            out.writeLong(id);
+            out.writeLong(values[MIN_TIMESTAMP]);
+            out.writeLong(values[MAX_TIMESTAMP]);
+            out.writeLong(sizeOf(id));
+            writeKeyCounts(out, recordCounts.get(id));
+        }
+        out.flush();
+        M6Util.writeAtomically(new File(directory, INDEX_FILE), bytes.toByteArray());
+    }
+
+    private void writeCursor() throws IOException {
+        state.setAckCursor(cursor, ackSegment, ackOffset);
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format(Locale.US, "%012d%s", id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Reads the key of a record (records are counted and dropped by key)
+     */
+    interface RecordKeys {
+
+        /**
+         * @param record buffer holding the record payload
+         * @param length length of the record
+         * @return key of the record (may be null)
+         */
+        String keyOf(byte[] record, int length);
+    }
+}
@@ -0,0 +1,278 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.json.JSONException;
+
+import java.util.Map;
+
+/**
+ * Streaming JSON writer for tasks, items and profiles
+ *
+ * Writes straight into a (reusable) StringBuilder without building JSONObject tree. Output is the same as
+ * org.json on Android: fields in order they are written, null fields left out, strings escaped the same way
+ * (including "\/") and integral doubles written without fraction.
+ *
+ * Writer is not thread safe.
+ *
+ * @since 0.0.5
+ */
+final class M6JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Output buffer
+     */
+    private final StringBuilder out;
+
+    /**
+     * True when next value in current object or array has to be separated with comma
+     */
+    private boolean comma;
+
+    M6JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    StringBuilder getBuffer() {
+        return this.out;
+    }
+
+    /**
+     * Clears the buffer for the next document
+     *
+     * @return this writer
+     */
+    M6JsonWriter reset() {
+        out.setLength(0);
+        comma = false;
+        return this;
+    }
+
+    /**
+     * Drops everything written after given buffer length (e.g. partially written event which failed)
+     *
+     * @param length length of the buffer to go back to
+     */
+    void rollback(int length) {
+        out.setLength(length);
+        char last = length == 0 ? '[' : out.charAt(length - 1);
+        comma = last != '[' && last != '{' && last != ':';
+    }
+
+    M6JsonWriter beginObject() {
+        separate();
+        out.append('{');
+        comma = false;
+        return this;
+    }
+
+    M6JsonWriter endObject() {
+        out.append('}');
+        comma = true;
+        return this;
+    }
+
+    M6JsonWriter beginArray() {
+        separate();
+        out.append('[');
+        comma = false;
+        return this;
+    }
+
+    M6JsonWriter endArray() {
+        out.append(']');
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes field name, it has to be followed by a value, object or array
+     *
+     * @param name field name
+     * @return this writer
+     */
+    M6JsonWriter name(String name) {
+        separate();
+        string(name);
+        out.append(':');
+        comma = false;
+        return this;
+    }
+
+    /**
+     * Writes string field (left out when value is null)
+     *
+     * @param name field name
+     * @param value field value
+     * @return this writer
+     */
+    M6JsonWriter field(String name, String value) {
+        if (value != null) {
+            name(name);
+            string(value);
+            comma = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes number field (left out when value is null)
+     *
+     * @param name field name
+     * @param value field value
+     * @return this writer
+     * @throws JSONException Exception when value is NaN or infinite
+     */
+    M6JsonWriter field(String name, Number value) throws JSONException {
+        if (value != null) {
+            String number = number(value);
+            name(name);
+            out.append(number);
+            comma = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes boolean field (left out when value is null)
+     *
+     * @param name field name
+     * @param value field value
+     * @return this writer
+     */
+    M6JsonWriter field(String name, Boolean value) {
+        if (value != null) {
+            name(name);
+            out.append(value.booleanValue() ? "true" : "false");
+            comma = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes map as nested object (left out when map is null). Null values in the map are written as null
+     *
+     * @param name field name
+     * @param values map of values
+     * @return this writer
+     */
+    M6JsonWriter field(String name, Map<String,String> values) {
+        if (values != null) {
+            name(name);
+            beginObject();
+            for (Map.Entry<String,String> entry : values.entrySet()) {
+                if (entry.getKey() == null) {
+                    continue;
+                }
+                name(entry.getKey());
+                if (entry.getValue() == null) {
+                    out.append("null");
+                } else {
+                    string(entry.getValue());
+                }
+                comma = true;
+            }
+            endObject();
+        }
+        return this;
+    }
+
+    private void separate() {
+        if (comma) {
+            out.append(',');
+        }
+    }
+
+    /**
+     * Same as JSONObject.numberToString
+     */
+    private static String number(Number value) throws JSONException {
+        if (value instanceof Long || value instanceof Integer) {
+            return value.toString();
+        }
+        double d = value.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+        if (value instanceof Double && d == 0 && 1 / d < 0) {
+            return "-0";
+        }
+        long l = value.longValue();
+        if (d == (double) l) {
+            return Long.toString(l);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Same escaping as JSONStringer
+     */
+    private void string(String value) {
+        out.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c > '/' && c != '\\') {
+                continue;
+            }
+            String escaped;
+            switch (c) {
+                case '"':
+                    escaped = "\\\"";
+                    break;
+                case '\\':
+                    escaped = "\\\\";
+                    break;
+                case '/':
+                    escaped = "\\/";
+                    break;
+                case '\t':
+                    escaped = "\\t";
+                    break;
+                case '\b':
+                    escaped = "\\b";
+                    break;
+                case '\n':
+                    escaped = "\\n";
+                    break;
+                case '\r':
+                    escaped = "\\r";
+                    break;
+                case '\f':
+                    escaped = "\\f";
+                    break;
+                default:
+                    if (c > 0x1F) {
+                        continue;
+                    }
+                    escaped = null;
+                    break;
+            }
+            // unescaped run is copied at once
+            out.append(value, start, i);
+            if (escaped != null) {
+                out.append(escaped);
+            } else {
+                out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        out.append(value, start, length);
+        out.append('"');
+    }
+}
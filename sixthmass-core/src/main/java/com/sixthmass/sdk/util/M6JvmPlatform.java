@@ -0,0 +1,143 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the SDK on a plain JVM (backend services, load tests, benchmarks)
+ *
+ * State and journals are kept in the given directory. Device values come from system properties (os.name,
+ * os.version, java.vendor), device id is generated once and stored. Logging goes to java.util.logging.
+ *
+ * <pre>
+ *     M6Config config = M6Config.instance(new M6JvmPlatform(new File("/var/lib/sixthmass")), "YOUR TOKEN HERE");
+ *     M6Pipeline.start(config);
+ *     M6Pipeline.track("My Event", properties);
+ * </pre>
+ *
+ * Needs org.json on the classpath (part of Android, e.g. com.vaadin.external.google:android-json on a JVM).
+ *
+ * @since 0.0.5
+ */
+public final class M6JvmPlatform implements M6Platform, M6DeviceInfo, M6Logger, M6Clock {
+
+    /**
+     * Storage key of the generated device id
+     */
+    private static final String DEVICE_ID = "sixthmass_device_id";
+
+    private static final Logger LOGGER = Logger.getLogger("com.sixthmass.sdk");
+
+    /**
+     * Wall clock and System.nanoTime as monotonic time. Also stamps events tracked before init when no other
+     * platform clock is set (see M6Config.setPlatformClock)
+     */
+    static final M6Clock CLOCK = new M6Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+    };
+
+    private final M6Storage storage;
+
+    /**
+     * @param directory directory for SDK state and journals (created if it doesn't exist)
+     */
+    public M6JvmPlatform(File directory) {
+        this.storage = new M6FileStorage(directory);
+    }
+
+    @Override
+    public M6Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public M6DeviceInfo getDeviceInfo() {
+        return this;
+    }
+
+    @Override
+    public M6Logger getLogger() {
+        return this;
+    }
+
+    @Override
+    public M6Clock getClock() {
+        return this;
+    }
+
+    @Override
+    public void attach(M6Config config) {
+        // no lifecycle on a plain JVM, sessions are started with M6Pipeline.startSession
+    }
+
+    @Override
+    public String getOs() {
+        return System.getProperty("os.name");
+    }
+
+    @Override
+    public String getOsVersion() {
+        return System.getProperty("os.version");
+    }
+
+    @Override
+    public String getManufacturer() {
+        return System.getProperty("java.vendor");
+    }
+
+    @Override
+    public String getModel() {
+        return System.getProperty("java.vm.name");
+    }
+
+    @Override
+    public synchronized String getDeviceId() {
+        String deviceId = storage.getString(DEVICE_ID, null);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            storage.edit().putString(DEVICE_ID, deviceId).apply();
+        }
+        return deviceId;
+    }
+
+    @Override
+    public void log(int priority, String tag, String message, Throwable error) {
+        Level level = priority >= ERROR ? Level.SEVERE : (priority == WARN ? Level.WARNING : (priority == INFO ? Level.INFO : Level.FINE));
+        LOGGER.log(level, tag + ": " + message, error);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return CLOCK.currentTimeMillis();
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return CLOCK.elapsedRealtime();
+    }
+}
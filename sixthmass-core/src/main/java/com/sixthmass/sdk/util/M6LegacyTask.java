@@ -0,0 +1,108 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field layout of M6Task as serialized by SDK versions up to 0.0.4
+ *
+ * Tasks stored in Shared Preferences by older versions carry all device and session values per event.
+ * They are read into this class (see LegacyObjectInputStream) and converted to M6Task with shared contexts.
+ * Fields must not be changed.
+ *
+ * @since 0.0.5
+ */
+final class M6LegacyTask implements Serializable {
+
+    /**
+     * Not compared with the stored one, LegacyObjectInputStream replaces the stream descriptor with this class
+     */
+    private static final long serialVersionUID = 1L;
+
+    public String eventName;
+    public String previousEvent;
+    public Long timestamp;
+    public Long previousTimestamp;
+    private String userId;
+    private String sessionId;
+    private String clientId;
+    private String libVer;
+    private String timezone;
+    private String os;
+    private Integer tzOffset;
+    private String browser;
+    private String browserVersion;
+    private String device;
+    private String language;
+    private String refDomain;
+    private Double sessionDuration;
+    private List<M6Item> purchasedItems;
+    private Map<String,String> properties;
+    protected boolean sent;
+
+    /**
+     * Converts legacy task to current task (equal contexts of consecutive tasks are shared)
+     *
+     * @param previous previously converted task or null
+     * @return task
+     */
+    M6Task toTask(M6Task previous) {
+        M6DeviceContext deviceContext = new M6DeviceContext(clientId, libVer, timezone, tzOffset, os, browser,
+                browserVersion, device, language, 0);
+        M6SessionContext sessionContext = new M6SessionContext(userId, sessionId,
+                timestamp == null || sessionDuration == null ? 0 : timestamp - sessionDuration.longValue() * 1000);
+        if (previous != null && deviceContext.equals(previous.getDeviceContext())) {
+            deviceContext = previous.getDeviceContext();
+        }
+        if (previous != null && sessionContext.equals(previous.getSessionContext())) {
+            sessionContext = previous.getSessionContext();
+        }
+        M6Task task = new M6Task(eventName, properties, timestamp, deviceContext, sessionContext, sessionDuration);
+        task.previousEvent = previousEvent;
+        task.previousTimestamp = previousTimestamp;
+        task.sent = sent;
+        if (purchasedItems != null) {
+            task.setPurchasedItems(purchasedItems);
+        }
+        return task;
+    }
+
+    /**
+     * Object stream reading M6Task stored by older SDK versions as M6LegacyTask
+     */
+    static final class LegacyObjectInputStream extends ObjectInputStream {
+
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            // only old layout (with per event device values) is mapped
+            if (M6Task.class.getName().equals(descriptor.getName()) && descriptor.getField("device") != null) {
+                return ObjectStreamClass.lookup(M6LegacyTask.class);
+            }
+            return descriptor;
+        }
+    }
+}
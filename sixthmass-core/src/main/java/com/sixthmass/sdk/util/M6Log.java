@@ -0,0 +1,69 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Logging of the SDK core
+ *
+ * Messages go to the logger of the platform, set when the configuration is created. Until then they are written
+ * to System.err.
+ *
+ * @since 0.0.5
+ */
+public final class M6Log {
+
+    private static volatile M6Logger logger = new M6Logger() {
+        @Override
+        public void log(int priority, String tag, String message, Throwable error) {
+            System.err.println(tag + ": " + message);
+            if (error != null) {
+                error.printStackTrace();
+            }
+        }
+    };
+
+    private M6Log() {
+    }
+
+    /**
+     * @param logger platform logger (not null)
+     */
+    static void setLogger(M6Logger logger) {
+        if (logger == null) {
+            throw new IllegalArgumentException("Logger can not be null");
+        }
+        M6Log.logger = logger;
+    }
+
+    static void i(String tag, String message) {
+        logger.log(M6Logger.INFO, tag, message, null);
+    }
+
+    static void w(String tag, String message) {
+        logger.log(M6Logger.WARN, tag, message, null);
+    }
+
+    static void w(String tag, String message, Throwable error) {
+        logger.log(M6Logger.WARN, tag, message, error);
+    }
+
+    static void e(String tag, String message) {
+        logger.log(M6Logger.ERROR, tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable error) {
+        logger.log(M6Logger.ERROR, tag, message, error);
+    }
+}
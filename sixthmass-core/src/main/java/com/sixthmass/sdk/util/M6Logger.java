@@ -0,0 +1,39 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Receives SDK log messages (see M6Log)
+ *
+ * @since 0.0.5
+ */
+public interface M6Logger {
+
+    /**
+     * Priorities (same values as android.util.Log)
+     */
+    int DEBUG = 3;
+    int INFO = 4;
+    int WARN = 5;
+    int ERROR = 6;
+
+    /**
+     * @param priority message priority
+     * @param tag message source
+     * @param message message (may be null)
+     * @param error exception (may be null)
+     */
+    void log(int priority, String tag, String message, Throwable error);
+}
@@ -0,0 +1,118 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of the SDK pipeline (track, persist, upload)
+ *
+ * Counters and histograms are striped so recording them on the caller thread (track) costs a couple of uncontended
+ * atomic increments. Gauges are set by the consumer thread.
+ *
+ * @since 0.0.5
+ */
+final class M6Metrics {
+
+    final M6Counter eventsEnqueued = new M6Counter();
+    final M6Counter eventsSent = new M6Counter();
+    final M6Counter eventsDropped = new M6Counter();
+    final M6Counter eventsRetried = new M6Counter();
+
+    /**
+     * Request payload bytes before and after compression
+     */
+    final M6Counter bytesSent = new M6Counter();
+    final M6Counter bytesSentCompressed = new M6Counter();
+
+    /**
+     * Time from track call until the task is in the ring buffer (nanoseconds, caller thread)
+     */
+    final M6Histogram enqueueLatency = new M6Histogram();
+
+    /**
+     * Time to enrich, encode and journal one drained batch of tasks (nanoseconds)
+     */
+    final M6Histogram persistLatency = new M6Histogram();
+
+    /**
+     * Time of one HTTP request (nanoseconds)
+     */
+    final M6Histogram uploadLatency = new M6Histogram();
+
+    /**
+     * Age of the event when the server acknowledged it (milliseconds)
+     */
+    final M6Histogram ackAge = new M6Histogram();
+
+    /**
+     * Tasks waiting in ring buffers at last drain
+     */
+    volatile long queueDepth;
+
+    /**
+     * Size of unsent events in journals
+     */
+    volatile long journalBytes;
+
+    /**
+     * Number of responses per HTTP status code
+     */
+    private final ConcurrentHashMap<Integer, M6Counter> httpStatus = new ConcurrentHashMap<>();
+
+    private volatile M6MetricsListener listener;
+
+    void onHttpStatus(int code) {
+        M6Counter counter = httpStatus.get(code);
+        if (counter == null) {
+            M6Counter created = new M6Counter();
+            counter = httpStatus.putIfAbsent(code, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    void setListener(M6MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Passes current metrics to the listener (if any)
+     */
+    void notifyListener() {
+        M6MetricsListener current = listener;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.onMetrics(snapshot());
+        } catch (RuntimeException e) {
+            M6Log.e("SixthMass", "Metrics listener failed", e);
+        }
+    }
+
+    M6MetricsSnapshot snapshot() {
+        Map<Integer, Long> statuses = new TreeMap<>();
+        for (Map.Entry<Integer, M6Counter> entry : httpStatus.entrySet()) {
+            statuses.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new M6MetricsSnapshot(queueDepth, journalBytes, eventsEnqueued.sum(), eventsSent.sum(),
+                eventsDropped.sum(), eventsRetried.sum(), bytesSent.sum(), bytesSentCompressed.sum(), statuses,
+                enqueueLatency.snapshot(), persistLatency.snapshot(), uploadLatency.snapshot(), ackAge.snapshot());
+    }
+}
@@ -0,0 +1,29 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+/**
+ * Receives SDK metrics after each upload attempt
+ *
+ * Called on the SDK background thread, implementation should return quickly.
+ *
+ * @since 0.0.5
+ */
+public interface M6MetricsListener {
+
+    /**
+     * @param metrics current metrics
+     */
+    void onMetrics(M6MetricsSnapshot metrics);
+}
@@ -0,0 +1,157 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Metrics of the SDK at one point in time (see SixthMass.getMetrics)
+ *
+ * Counters are totals since the SDK was initialized. Latencies are in nanoseconds, event age in milliseconds.
+ *
+ * @since 0.0.5
+ */
+public final class M6MetricsSnapshot {
+
+    private final long queueDepth;
+    private final long journalBytes;
+    private final long eventsEnqueued;
+    private final long eventsSent;
+    private final long eventsDropped;
+    private final long eventsRetried;
+    private final long bytesSent;
+    private final long bytesSentCompressed;
+    private final Map<Integer, Long> httpStatusCounts;
+    private final M6Histogram.Snapshot enqueueLatency;
+    private final M6Histogram.Snapshot persistLatency;
+    private final M6Histogram.Snapshot uploadLatency;
+    private final M6Histogram.Snapshot ackAge;
+
+    M6MetricsSnapshot(long queueDepth, long journalBytes, long eventsEnqueued, long eventsSent, long eventsDropped,
+                      long eventsRetried, long bytesSent, long bytesSentCompressed, Map<Integer, Long> httpStatusCounts,
+                      M6Histogram.Snapshot enqueueLatency, M6Histogram.Snapshot persistLatency,
+                      M6Histogram.Snapshot uploadLatency, M6Histogram.Snapshot ackAge) {
+        this.queueDepth = queueDepth;
+        this.journalBytes = journalBytes;
+        this.eventsEnqueued = eventsEnqueued;
+        this.eventsSent = eventsSent;
+        this.eventsDropped = eventsDropped;
+        this.eventsRetried = eventsRetried;
+        this.bytesSent = bytesSent;
+        this.bytesSentCompressed = bytesSentCompressed;
+        this.httpStatusCounts = Collections.unmodifiableMap(httpStatusCounts);
+        this.enqueueLatency = enqueueLatency;
+        this.persistLatency = persistLatency;
+        this.uploadLatency = uploadLatency;
+        this.ackAge = ackAge;
+    }
+
+    /**
+     * @return tasks waiting in ring buffers when the consumer last drained them
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return bytes of unsent events in journals
+     */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    public long getEventsEnqueued() {
+        return eventsEnqueued;
+    }
+
+    /**
+     * @return events acknowledged by the server
+     */
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    /**
+     * @return events dropped (queue full, storage quota, rejected by the server)
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return events in failed requests (each failed attempt counts)
+     */
+    public long getEventsRetried() {
+        return eventsRetried;
+    }
+
+    /**
+     * @return request payload bytes before compression
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return request payload bytes as sent (after compression)
+     */
+    public long getBytesSentCompressed() {
+        return bytesSentCompressed;
+    }
+
+    /**
+     * @return number of responses per HTTP status code
+     */
+    public Map<Integer, Long> getHttpStatusCounts() {
+        return httpStatusCounts;
+    }
+
+    /**
+     * @return time from track call until the event is queued (caller thread)
+     */
+    public M6Histogram.Snapshot getEnqueueLatency() {
+        return enqueueLatency;
+    }
+
+    /**
+     * @return time to persist one drained batch of events
+     */
+    public M6Histogram.Snapshot getPersistLatency() {
+        return persistLatency;
+    }
+
+    /**
+     * @return HTTP request round trip time
+     */
+    public M6Histogram.Snapshot getUploadLatency() {
+        return uploadLatency;
+    }
+
+    /**
+     * @return age of events (milliseconds since tracked) when acknowledged by the server
+     */
+    public M6Histogram.Snapshot getAckAge() {
+        return ackAge;
+    }
+
+    @Override
+    public String toString() {
+        return "M6MetricsSnapshot{queueDepth=" + queueDepth + ", journalBytes=" + journalBytes
+                + ", eventsEnqueued=" + eventsEnqueued + ", eventsSent=" + eventsSent + ", eventsDropped=" + eventsDropped
+                + ", eventsRetried=" + eventsRetried + ", bytesSent=" + bytesSent + ", bytesSentCompressed=" + bytesSentCompressed
+                + ", httpStatusCounts=" + httpStatusCounts + ", enqueueLatency=" + enqueueLatency
+                + ", persistLatency=" + persistLatency + ", uploadLatency=" + uploadLatency + ", ackAge=" + ackAge + "}";
+    }
+}
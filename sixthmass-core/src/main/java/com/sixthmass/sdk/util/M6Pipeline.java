@@ -0,0 +1,381 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event and profile pipeline of the SDK, independent of the platform
+ *
+ * Tracking publishes the event to a bounded ring buffer and never waits for the consumer. A single long lived
+ * consumer thread (M6TaskEmitter) journals and sends the events, profile updates are merged and sent by
+ * M6ProfileEmitter. Android apps use it through SixthMass, on a plain JVM it's started directly with
+ * M6JvmPlatform:
+ *
+ * <pre>
+ *     M6Pipeline.start(M6Config.instance(new M6JvmPlatform(directory), token));
+ *     M6Pipeline.startSession();
+ *     M6Pipeline.track("My Event", properties);
+ * </pre>
+ *
+ * @since 0.0.5
+ */
+public final class M6Pipeline {
+
+    /**
+     * Maximum number of tasks waiting for the consumer. Tracking more than that drops the event
+     */
+    private static final int TASK_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Preallocated ring buffer holding tasks to be sent to SixthMass event server
+     * (multi producer - any thread calling track, single consumer - M6TaskEmitter)
+     */
+    private static final M6RingBuffer<M6Task> taskQueue = new M6RingBuffer<>(TASK_QUEUE_CAPACITY);
+
+    /**
+     * Maximum number of critical tasks (purchase, register) waiting for the consumer
+     */
+    private static final int CRITICAL_TASK_QUEUE_CAPACITY = 256;
+
+    /**
+     * Ring buffer holding critical tasks. They are consumed and sent before all other tasks
+     */
+    private static final M6RingBuffer<M6Task> criticalTaskQueue = new M6RingBuffer<>(CRITICAL_TASK_QUEUE_CAPACITY);
+
+    /**
+     * Maximum number of tasks tracked before the pipeline started
+     */
+    private static final int PRE_INIT_QUEUE_CAPACITY = 128;
+
+    /**
+     * Small ring buffer holding tasks tracked while no consumer is running (before init or after shutdown). The
+     * consumer drains it first when it starts
+     */
+    private static final M6RingBuffer<M6Task> preInitTaskQueue = new M6RingBuffer<>(PRE_INIT_QUEUE_CAPACITY);
+
+    /**
+     * Maximum number of profile updates made before the pipeline started
+     */
+    private static final int PRE_INIT_PROFILE_QUEUE_CAPACITY = 16;
+
+    /**
+     * Small ring buffer holding profile updates made while no profile writer is running (before init or after
+     * shutdown). The writer merges them first when it starts
+     */
+    private static final M6RingBuffer<SixthMassUserProfile> preInitProfileQueue = new M6RingBuffer<>(PRE_INIT_PROFILE_QUEUE_CAPACITY);
+
+    /**
+     * Events dropped because the pre-init buffer was full, added to the metrics once the pipeline is started
+     */
+    private static final AtomicLong preInitDropped = new AtomicLong();
+
+    /**
+     * Creates daemon thread of the task consumer
+     */
+    private static final ThreadFactory EMITTER_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SixthMass-emitter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * no need to have more than 1 thread sending events. The thread is occupied by long lived M6TaskEmitter
+     * (created again when pipeline is started after shutdown)
+     */
+    private static ExecutorService poolExecutor = Executors.newSingleThreadExecutor(EMITTER_THREADS);
+
+    /**
+     * Single consumer of the task queue, started on init
+     */
+    private static volatile M6TaskEmitter taskEmitter;
+
+    /**
+     * Single writer of profile updates (merges pending updates and sends them on it's own thread), started on init
+     */
+    private static volatile M6ProfileEmitter profileEmitter;
+
+    /**
+     * Profile writer of the previous run (after shutdown), pipeline is started again only once it has terminated
+     */
+    private static M6ProfileEmitter stoppedProfileEmitter;
+
+    private M6Pipeline() {
+    }
+
+    /**
+     * Starts the single long lived task consumer and the profile writer (only once, or again after shutdown)
+     *
+     * Returns immediately, stored state is loaded by the consumer thread. Not started again while threads of the
+     * previous run are still running (shutdown returned -1), there would be two consumers of the same queues and
+     * journals. Events tracked in the meantime wait in the pre-init buffer
+     *
+     * @param config SDK configuration
+     */
+    public static synchronized void start(M6Config config) {
+        if (taskEmitter != null) {
+            return;
+        }
+        if (poolExecutor.isShutdown()) {
+            if (!poolExecutor.isTerminated() || (stoppedProfileEmitter != null && !stoppedProfileEmitter.isTerminated())) {
+                M6Log.e("SixthMass", "SixthMass SDK threads of previous run still running, SDK not started again");
+                return;
+            }
+            poolExecutor = Executors.newSingleThreadExecutor(EMITTER_THREADS);
+            stoppedProfileEmitter = null;
+        }
+        try {
+            profileEmitter = new M6ProfileEmitter(preInitProfileQueue, config);
+            profileEmitter.start();
+            taskEmitter = new M6TaskEmitter(taskQueue, criticalTaskQueue, preInitTaskQueue, config);
+            poolExecutor.execute(taskEmitter);
+            config.onEventsDropped(preInitDropped.getAndSet(0));
+        } catch (SixthMassException e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Uploads all tracked events regardless of the flush policy and waits until they are sent, upload fails or the
+     * timeout elapses. Events not sent stay journaled and are sent later as usual
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return number of events left unsent, -1 if not initialized or flush didn't complete in time
+     */
+    public static long flush(long timeoutMillis) {
+        M6TaskEmitter emitter = taskEmitter;
+        if (emitter == null) {
+            M6Log.e("SixthMass", "SixthMass SDK Not initialized");
+            return -1;
+        }
+        return flush(emitter, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * Requests upload of all tracked events regardless of the flush policy. Returns immediately
+     *
+     * @param timeoutMillis how long the consumer may keep uploading
+     */
+    public static void requestFlush(long timeoutMillis) {
+        M6TaskEmitter emitter = taskEmitter;
+        if (emitter != null) {
+            emitter.requestFlush(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+    }
+
+    /**
+     * Flushes tracked events and stops the consumer and profile writer. Events tracked afterwards wait in the small
+     * pre-init buffer until the pipeline is started again. Unsent events and profile updates stay journaled and are
+     * sent on next start
+     *
+     * When threads don't stop in time they keep running until they finish their current work and the pipeline can't
+     * be started again until then (see start)
+     *
+     * @param timeoutMillis maximum time to wait for flush and for each of the threads to stop
+     * @return number of events left unsent (journaled), -1 if not initialized or threads didn't stop in time (not yet
+     * restartable)
+     */
+    public static synchronized long shutdown(long timeoutMillis) {
+        M6TaskEmitter emitter = taskEmitter;
+        M6ProfileEmitter profiles = profileEmitter;
+        if (emitter == null) {
+            return -1;
+        }
+        // producers see the pipeline stopped from now on
+        taskEmitter = null;
+        profileEmitter = null;
+        stoppedProfileEmitter = profiles;
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        flush(emitter, timeout);
+        try {
+            poolExecutor.shutdownNow();
+            boolean stopped = poolExecutor.awaitTermination(timeout, TimeUnit.NANOSECONDS);
+            stopped &= profiles.shutdown(timeout);
+            if (!stopped) {
+                M6Log.w("SixthMass", "SixthMass SDK threads didn't stop in " + timeoutMillis + "ms");
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        long unsent = emitter.getUnsentOnExit();
+        M6Log.i("SixthMass", "SixthMass SDK shut down. Events left unsent: " + unsent);
+        return unsent;
+    }
+
+    private static long flush(M6TaskEmitter emitter, long timeoutNanos) {
+        try {
+            return emitter.awaitFlush(emitter.requestFlush(timeoutNanos), timeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Starts a new session of the current user and tracks the launch event
+     */
+    public static void startSession() {
+        try {
+            M6Config config = M6Config.instance();
+            M6Clock clock = config.getClock();
+            config.startSession(UUID.randomUUID().toString(), clock.currentTimeMillis(), clock.elapsedRealtime());
+            track(M6Util.EVENT_NAME_LAUNCH, null);
+            M6Log.i("SixthMass", "Initializing new session with id: " + config.getSessionId());
+        } catch (SixthMassException e) {
+            M6Log.e("SixthMass", e.getMessage());
+        }
+    }
+
+    /**
+     * Non-blocking update of user profile (see SixthMass.profileUpdate)
+     *
+     * Only copies the update on the calling thread. Missing user id and client id are filled in by the profile
+     * writer, updates made before init wait in the small pre-init buffer
+     *
+     * @param profile Assigned user profile
+     * @param customProperties Optional
+     */
+    public static void profileUpdate(SixthMassUserProfile profile, Map<String,String> customProperties) {
+        M6ProfileEmitter emitter = profileEmitter;
+        if (emitter == null) {
+            updateBeforeStart(profile, customProperties);
+            return;
+        }
+        emitter.update(profile, customProperties);
+    }
+
+    /**
+     * Registration on the SixthMass at the point of user registration
+     *
+     * @param profile Users profile
+     * @param customProperties Optional
+     */
+    public static void register(SixthMassUserProfile profile, Map<String,String> customProperties) {
+        profileUpdate(profile, customProperties);
+        track(M6Util.EVENT_NAME_REGISTER, customProperties);
+    }
+
+    /**
+     * Tracking of purchased items
+     *
+     * @param items List of purchased items
+     * @param customProperties Optional additional purchase properties
+     */
+    public static void purchase(List<SixthMassItem> items, Map<String,String> customProperties) {
+
+        long start = System.nanoTime();
+        M6Task task = new M6Task(M6Util.EVENT_NAME_PURCHASE, customProperties);
+
+        // adding purchase data to task
+        task = M6Util.augmentWithPurchase(task,items);
+
+        track(task, start);
+    }
+
+    /**
+     * Event tracking method with custom properties
+     *
+     * @param eventName Name of the event to track
+     * @param customProperties Optional
+     */
+    public static void track(String eventName, Map<String,String> customProperties) {
+
+        // creating task with event name, time, session and copy of custom properties
+        // device values and previous event are added on the consumer thread
+        long start = System.nanoTime();
+        M6Task task = new M6Task(eventName, customProperties);
+        track(task, start);
+    }
+
+    /**
+     * Main method for sending events
+     *
+     * Returns as soon as the task is published to the ring buffer. Persisting and sending happens on the consumer thread
+     *
+     * @param task Task object
+     * @param start System.nanoTime when tracking started (for enqueue latency metrics)
+     */
+    private static void track(final M6Task task, long start) {
+        M6TaskEmitter emitter = taskEmitter;
+        if (emitter == null) {
+            trackBeforeStart(task);
+            return;
+        }
+        // tasks are added to preallocated ring buffer
+        // we don't wan't to block main thread but it's also thread safe
+        M6RingBuffer<M6Task> queue = M6Util.isCritical(task.eventName) ? criticalTaskQueue : taskQueue;
+        if (!queue.offer(task)) {
+            M6Log.w("SixthMass", "Task queue full. Event dropped: " + task.eventName);
+            emitter.onDropped();
+            return;
+        }
+        emitter.onEnqueued(start);
+        // consumer is woken up only if it's sleeping
+        emitter.wakeUp();
+    }
+
+    /**
+     * Keeps profile update made while no profile writer is running in the pre-init buffer
+     *
+     * @param profile Assigned user profile
+     * @param customProperties Optional
+     */
+    private static void updateBeforeStart(SixthMassUserProfile profile, Map<String,String> customProperties) {
+        if (!preInitProfileQueue.offer(M6ProfileEmitter.copyOf(profile, customProperties))) {
+            M6Log.w("SixthMass", "SixthMass SDK Not initialized and pre-init buffer full. Profile update dropped");
+            return;
+        }
+        // pipeline may have been started in the meantime, its writer merges the buffer with other updates
+        M6ProfileEmitter emitter = profileEmitter;
+        if (emitter != null) {
+            emitter.wakeUp();
+        }
+    }
+
+    /**
+     * Keeps task tracked while no consumer is running in the pre-init buffer
+     *
+     * @param task Task object
+     */
+    private static void trackBeforeStart(M6Task task) {
+        if (!preInitTaskQueue.offer(task)) {
+            M6Log.w("SixthMass", "SixthMass SDK Not initialized and pre-init buffer full. Event dropped: " + task.eventName);
+            preInitDropped.incrementAndGet();
+            // pipeline may have been started in the meantime, drops it didn't see are counted here
+            M6TaskEmitter emitter = taskEmitter;
+            if (emitter != null) {
+                emitter.onDropped(preInitDropped.getAndSet(0));
+            }
+            return;
+        }
+        // pipeline may have been started in the meantime, its consumer drains the buffer with other tasks
+        M6TaskEmitter emitter = taskEmitter;
+        if (emitter != null) {
+            emitter.wakeUp();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Services of the platform the SDK runs on
+ *
+ * SDK core (journals, batching, HTTP, profile updates) is plain Java. Everything it needs from the platform goes
+ * through this interface: key-value storage and files directory, device values, logging and clock. Android
+ * binding (sixthmass-android-sdk) implements it on top of Context, SharedPreferences and Build. M6JvmPlatform
+ * runs the SDK on a plain JVM (backend services, load tests, benchmarks).
+ *
+ * @since 0.0.5
+ */
+public interface M6Platform {
+
+    /**
+     * @return storage for SDK state and journals
+     */
+    M6Storage getStorage();
+
+    /**
+     * @return device values sent with every event
+     */
+    M6DeviceInfo getDeviceInfo();
+
+    /**
+     * @return logger used by the SDK
+     */
+    M6Logger getLogger();
+
+    /**
+     * @return wall and monotonic clock
+     */
+    M6Clock getClock();
+
+    /**
+     * Called once when the SDK configuration is created. Platform can hook into it's lifecycle here (e.g. start
+     * sessions when app comes to foreground, refresh device values when locale changes)
+     *
+     * @param config SDK configuration
+     */
+    void attach(M6Config config);
+}
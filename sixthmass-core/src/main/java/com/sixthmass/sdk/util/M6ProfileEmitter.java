@@ -0,0 +1,396 @@
+package com.sixthmass.sdk.util;
+/*
+  Created by Igor Rendulic on 4/27/17.
+  
+  Copyright 2017 
+  
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+    
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Worker sending updates of user profile to SixthMass servers
+ *
+ * Single writer: profile updates are merged into one pending delta (per field, last write wins, custom values
+ * per key) which one background thread completes (user id, client id) and appends to the durable profile journal
+ * right away. Updates made while no writer was running are merged first. Journaled deltas are
+ * merged again and sent as a single request once updates stop coming for a moment. Delta is acknowledged in the
+ * journal only after the server confirmed it, so updates survive process death and are replayed on next start.
+ *
+ * Failed sends are retried with exponential backoff and jitter (honoring Retry-After) and are not attempted while
+ * the circuit breaker for the profile endpoint is open, same as events.
+ *
+ * Only fields which changed since the last profile acknowledged by the server are sent (hashes of acknowledged
+ * field values are kept in Shared Preferences). When nothing changed no request is made.
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class M6ProfileEmitter implements Runnable {
+
+    /**
+     * How long updates are collected before the delta is sent
+     */
+    private static final long COALESCE_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * How long to wait after unexpected error (e.g. journal can't be written) before trying again
+     */
+    private static final long ERROR_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Single thread persisting and sending profile updates
+     */
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SixthMass-profile");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Sends journaled deltas (runs on the executor thread)
+     */
+    private final Runnable sender = new Runnable() {
+        @Override
+        public void run() {
+            sendScheduled = false;
+            send();
+        }
+    };
+
+    /**
+     * Configuration object
+     */
+    private final M6Config config;
+
+    /**
+     * Profile updates made while no writer was running (before init or after shutdown), older than pending ones
+     */
+    private final M6RingBuffer<SixthMassUserProfile> preInitQueue;
+
+    /**
+     * Guards pending delta and persist flag
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Merged updates not yet persisted
+     */
+    private SixthMassUserProfile pending;
+
+    /**
+     * True while persisting of pending delta is scheduled
+     */
+    private boolean persistScheduled;
+
+    /**
+     * Durable log of profile deltas (executor thread only)
+     */
+    private M6Journal journal;
+
+    /**
+     * Codec for profile journal records (executor thread only)
+     */
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    /**
+     * True while sending is scheduled (executor thread only)
+     */
+    private boolean sendScheduled;
+
+    /**
+     * Delays between failed sends (executor thread only)
+     */
+    private final M6Backoff backoff = new M6Backoff();
+
+    /**
+     * Hashes of profile fields acknowledged by the server (executor thread only)
+     */
+    private Map<String,Long> acked;
+
+    /**
+     * Constructor for this runnable
+     *
+     * Checks it SDK was initialized and sets the config for this runnable
+     *
+     * @param config SDK configuration
+     * @throws SixthMassException Exception when SDK not initailized first
+     */
+    public M6ProfileEmitter(M6Config config) throws SixthMassException {
+        this(new M6RingBuffer<SixthMassUserProfile>(1), config);
+    }
+
+    /**
+     * Constructor for this runnable
+     *
+     * @param preInitQueue profile updates made while no writer was running (see copyOf), merged on start
+     * @param config SDK configuration
+     * @throws SixthMassException Exception when SDK not initailized first
+     * @since 0.0.5
+     */
+    public M6ProfileEmitter(M6RingBuffer<SixthMassUserProfile> preInitQueue, M6Config config) throws SixthMassException {
+        if (config == null) {
+            throw new SixthMassException("SixthMass SDK Not initialized");
+        }
+        if (config.getToken() == null || config.getToken() == null) {
+            throw new SixthMassException("SixthMass SDK Not Properly initialized. Context and Token can not be null");
+        }
+
+        this.config = config;
+        this.preInitQueue = preInitQueue;
+    }
+
+    /**
+     * Opens the profile journal and replays updates not acknowledged in the previous run
+     */
+    public void start() {
+        synchronized (lock) {
+            persistScheduled = true;
+        }
+        executor.execute(this);
+    }
+
+    /**
+     * Stops the executor. Pending update is still journaled, scheduled sends are cancelled (journaled deltas are
+     * sent on next start)
+     *
+     * @param timeoutNanos maximum time to wait for the journal write
+     * @return true if executor terminated in time
+     * @throws InterruptedException Exception when waiting thread is interrupted
+     */
+    public boolean shutdown(long timeoutNanos) throws InterruptedException {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
+        return executor.awaitTermination(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true once the writer thread stopped after shutdown
+     */
+    boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    /**
+     * Merges profile update into pending delta and schedules persisting and sending. Returns immediately
+     *
+     * Profile is copied on the calling thread so it can be changed again right after this call
+     *
+     * @param profile updated user profile
+     * @param customProperties additional custom values (optional)
+     */
+    public void update(SixthMassUserProfile profile, Map<String,String> customProperties) {
+        SixthMassUserProfile update = copyOf(profile, customProperties);
+        synchronized (lock) {
+            if (pending == null) {
+                pending = update;
+            } else {
+                pending.merge(update);
+            }
+        }
+        wakeUp();
+    }
+
+    /**
+     * Schedules persisting of pending delta and updates waiting in the pre-init queue (unless already scheduled)
+     */
+    void wakeUp() {
+        synchronized (lock) {
+            if (persistScheduled) {
+                return;
+            }
+            persistScheduled = true;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            M6Log.w("SixthMass", "SixthMass SDK shut down. Profile update dropped");
+        }
+    }
+
+    /**
+     * Copy of the profile update with custom properties, taken on the calling thread
+     *
+     * @param profile updated user profile
+     * @param customProperties additional custom values (optional)
+     * @return update
+     */
+    static SixthMassUserProfile copyOf(SixthMassUserProfile profile, Map<String,String> customProperties) {
+        SixthMassUserProfile update = profile.snapshot();
+        update.mergeCustomValues(customProperties);
+        return update;
+    }
+
+    /**
+     * Appends pending delta to the journal and schedules sending
+     *
+     * User id and client id missing in the delta are filled in here, reading them may wait for stored state
+     */
+    @Override
+    public void run() {
+        SixthMassUserProfile delta = null;
+        SixthMassUserProfile early;
+        while ((early = preInitQueue.poll()) != null) {
+            if (delta == null) {
+                delta = early;
+            } else {
+                delta.merge(early);
+            }
+        }
+        synchronized (lock) {
+            if (delta == null) {
+                delta = pending;
+            } else if (pending != null) {
+                delta.merge(pending);
+            }
+            pending = null;
+            persistScheduled = false;
+        }
+        try {
+            if (journal == null) {
+                openJournal();
+            }
+            if (delta != null) {
+                M6Util.augmentProfile(delta, config);
+                journal.append(codec.getBuffer(), codec.encodeProfile(delta));
+                journal.flush();
+                scheduleSend(COALESCE_DELAY_NANOS);
+            }
+        } catch (Exception e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+            synchronized (lock) {
+                // delta is kept in memory, updates which came in the meantime are newer and win
+                if (delta != null) {
+                    if (pending != null) {
+                        delta.merge(pending);
+                    }
+                    pending = delta;
+                }
+                if (!persistScheduled && !executor.isShutdown()) {
+                    persistScheduled = true;
+                    executor.schedule(this, ERROR_DELAY_NANOS, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private void openJournal() throws IOException {
+        journal = new M6Journal(new File(config.getStorage().getFilesDir(), M6Util.PROFILE_JOURNAL_DIRECTORY),
+                config.getStateStore(), M6StateStore.PROFILE_JOURNAL);
+        // updates left in the journal from previous run
+        scheduleSend(0);
+    }
+
+    private void scheduleSend(long delayNanos) {
+        // after shutdown journaled deltas wait for next start
+        if (!sendScheduled && !executor.isShutdown()) {
+            sendScheduled = true;
+            executor.schedule(sender, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Merges all journaled deltas and sends fields changed since last acknowledged profile in one request
+     */
+    private void send() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            SixthMassUserProfile delta = null;
+            byte[] record;
+            while ((record = journal.read()) != null) {
+                SixthMassUserProfile update = codec.decodeProfile(record);
+                if (update == null) {
+                    continue; // corrupted record is acknowledged with the rest
+                }
+                if (delta == null) {
+                    delta = update;
+                } else {
+                    delta.merge(update);
+                }
+            }
+            if (delta == null) {
+                journal.ack();
+                return;
+            }
+
+            if (acked == null) {
+                acked = M6Util.readProfileHashes(config.getStorage());
+            }
+            // acknowledged state of another user is of no use
+            Long user = acked.get("userId");
+            boolean userChanged = user != null && user != M6Util.hash(delta.getUserId());
+            if (userChanged) {
+                acked.clear();
+            }
+            Map<String,Long> hashes = new HashMap<>();
+            SixthMassUserProfile changes = delta.changedSince(acked, hashes);
+            if (changes.hasNoValues()) {
+                M6Log.i("SixthMass", "Profile unchanged, nothing to send");
+                journal.ack();
+                return;
+            }
+            M6JsonWriter json = new M6JsonWriter(new StringBuilder(512));
+            changes.writeJson(json);
+            String payload = json.getBuffer().toString();
+            try {
+                config.getTransport().post(M6Util.ENDPOINT_PROFILE, payload, config.getCompressionThreshold());
+            } catch (M6HttpException e) {
+                if (e.isRetryable()) {
+                    retryLater(e.getRetryAfterMillis(), e);
+                    return;
+                }
+                // server will never accept this update, retrying it would block all following updates
+                M6Log.e("SixthMass", "Profile update rejected and dropped: " + e.getMessage());
+                journal.ack();
+                return;
+            } catch (IOException e) {
+                retryLater(-1, e);
+                return;
+            }
+            journal.ack();
+            backoff.onSuccess();
+            acked.putAll(hashes);
+            M6Util.saveProfileHashes(config.getStorage(), hashes, userChanged);
+            M6Log.i("SixthMass", payload);
+        } catch (Exception e) {
+            M6Log.e("SixthMass", e.getMessage(), e);
+            journal.rewind();
+            scheduleSend(ERROR_DELAY_NANOS);
+        }
+    }
+
+    /**
+     * Leaves deltas in the journal and schedules next attempt with exponential backoff
+     */
+    private void retryLater(long retryAfterMillis, IOException e) {
+        journal.rewind();
+        long delay = backoff.onFailure(retryAfterMillis);
+        M6Log.w("SixthMass", "Profile update failed (" + backoff.getFailures() + " in a row), next attempt in "
+                + TimeUnit.NANOSECONDS.toSeconds(delay) + "s: " + e.getMessage());
+        scheduleSend(delay);
+    }
+}
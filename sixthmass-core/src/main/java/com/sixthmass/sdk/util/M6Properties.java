@@ -0,0 +1,137 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable compact copy of custom event properties
+ *
+ * Keys and values are kept in a single array in iteration order of the copied map. Event properties are few so
+ * lookups are linear. Copy is taken on the calling thread so the app can keep changing its own map.
+ *
+ * @since 0.0.5
+ */
+final class M6Properties extends AbstractMap<String,String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Keys at even, values at odd indexes
+     */
+    private final String[] entries;
+
+    M6Properties(String[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Immutable copy of the map
+     *
+     * @param properties map to copy (may be null)
+     * @return copy or null if properties are null
+     */
+    static M6Properties copyOf(Map<String,String> properties) {
+        if (properties == null) {
+            return null;
+        }
+        if (properties instanceof M6Properties) {
+            return (M6Properties) properties;
+        }
+        String[] entries = new String[properties.size() * 2];
+        int i = 0;
+        for (Map.Entry<String,String> entry : properties.entrySet()) {
+            if (i == entries.length) {
+                break; // map changed by another thread while copying
+            }
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        if (i < entries.length) {
+            String[] copied = new String[i];
+            System.arraycopy(entries, 0, copied, 0, i);
+            entries = copied;
+        }
+        return new M6Properties(entries);
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public String get(Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (M6Util.equal(entries[i], key)) {
+                return entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (M6Util.equal(entries[i], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Map.Entry<String,String>> entrySet() {
+        return new AbstractSet<Map.Entry<String,String>>() {
+            @Override
+            public Iterator<Map.Entry<String,String>> iterator() {
+                return new Iterator<Map.Entry<String,String>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < entries.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String,String> next() {
+                        if (index >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String,String> entry = new SimpleImmutableEntry<>(entries[index], entries[index + 1]);
+                        index += 2;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.length / 2;
+            }
+        };
+    }
+}
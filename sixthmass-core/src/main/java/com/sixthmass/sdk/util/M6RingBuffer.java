@@ -0,0 +1,166 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer single-consumer ring buffer
+ *
+ * All slots are allocated up front. Producers claim a slot with a single CAS on the tail and publish it by
+ * bumping the slot sequence, so offering never blocks and never allocates. Only one thread may poll.
+ *
+ * @param <E> element type
+ * @since 0.0.5
+ */
+public final class M6RingBuffer<E> {
+
+    /**
+     * Capacity - 1 (capacity is always power of 2)
+     */
+    private final int mask;
+
+    /**
+     * Preallocated element slots
+     */
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * Per slot sequence. Equal to position when slot is free for producer, position + 1 when published
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Next position to be claimed by producers
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to be read by the consumer (written only by consumer)
+     */
+    private volatile long head;
+
+    /**
+     * Creates ring buffer with capacity rounded up to the next power of 2
+     *
+     * @param capacity minimum number of elements the buffer can hold
+     */
+    public M6RingBuffer(int capacity) {
+        if (capacity < 2) {
+            capacity = 2;
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds element to the buffer. Safe to call from any thread
+     *
+     * @param element element (not null)
+     * @return false when buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // consumer hasn't freed this slot yet
+            } else {
+                position = tail.get(); // another producer claimed it
+            }
+        }
+        slots.lazySet(index, element);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element. Must only be called from the consumer thread
+     *
+     * @return element or null if buffer empty
+     */
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Moves up to max elements into the collection. Must only be called from the consumer thread
+     *
+     * @param target collection to add elements to
+     * @param max maximum number of elements to move
+     * @return number of elements moved
+     */
+    public int drainTo(Collection<? super E> target, int max) {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Approximate number of elements waiting in the buffer
+     *
+     * @return size
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return size < 0 ? 0 : (int) Math.min(size, mask + 1);
+    }
+
+    /**
+     * @return true when no element is published
+     */
+    public boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * @return maximum number of elements
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,114 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the user and session shared by all events of the session
+ *
+ * New snapshot is created by M6Config only when a new session starts or user changes.
+ *
+ * @since 0.0.5
+ */
+public final class M6SessionContext implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Last deserialized context, equal deserialized contexts share this instance
+     */
+    private static volatile M6SessionContext last;
+
+    /**
+     * UUID of the current user
+     */
+    private final String userId;
+
+    /**
+     * Current session id
+     */
+    private final String sessionId;
+
+    /**
+     * Time of the session start (ms since epoch)
+     */
+    private final long sessionStart;
+
+    /**
+     * M6Clock.elapsedRealtime at the session start (only valid in the process which started the session)
+     */
+    private final transient long monotonicStart;
+
+    M6SessionContext(String userId, String sessionId, long sessionStart) {
+        this(userId, sessionId, sessionStart, 0);
+    }
+
+    M6SessionContext(String userId, String sessionId, long sessionStart, long monotonicStart) {
+        this.userId = userId;
+        this.sessionId = sessionId;
+        this.sessionStart = sessionStart;
+        this.monotonicStart = monotonicStart;
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    long getSessionStart() {
+        return sessionStart;
+    }
+
+    long getMonotonicStart() {
+        return monotonicStart;
+    }
+
+    /**
+     * Deserialized tasks share equal contexts instead of holding a copy each
+     *
+     * @return shared instance
+     */
+    private Object readResolve() {
+        M6SessionContext shared = last;
+        if (this.equals(shared)) {
+            return shared;
+        }
+        last = this;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof M6SessionContext)) {
+            return false;
+        }
+        M6SessionContext other = (M6SessionContext) o;
+        return sessionStart == other.sessionStart && M6Util.equal(userId, other.userId)
+                && M6Util.equal(sessionId, other.sessionId);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = sessionId == null ? 0 : sessionId.hashCode();
+        return 31 * hash + (userId == null ? 0 : userId.hashCode());
+    }
+}
@@ -0,0 +1,329 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Small fixed-layout binary file with the hot state of the SDK: user id, cursor of the previous event and ack
+ * cursors of the journals
+ *
+ * File has two slots. Every save writes the complete state with the next sequence number and a CRC32 into the slot
+ * not holding the latest state, so a torn write never damages the last good state. On open the valid slot with the
+ * higher sequence wins. Saving is a single positioned write of one slot (no XML rewrite like Shared Preferences
+ * commit, no rename) and the store has its own file and lock, so it never waits for event storage.
+ *
+ * Slot layout (big endian):
+ * <pre>
+ *     0    magic and version
+ *     4    sequence
+ *     12   previous event timestamp
+ *     20   ack cursors of the journals (segment, offset) * JOURNALS, segment -1 when not saved yet
+ *     68   user id (length, UTF-8 bytes, at most MAX_USER_ID bytes)
+ *     196  previous event name (length, UTF-8 bytes, at most MAX_PREVIOUS_EVENT bytes), length -1 when none
+ *     1020 CRC32 of the slot up to here
+ * </pre>
+ *
+ * When the file can't be opened state is kept in memory only.
+ *
+ * @since 0.0.5
+ */
+final class M6StateStore {
+
+    /**
+     * Name of the state file in the SDK files directory
+     */
+    static final String FILE_NAME = "sixthmass.state";
+
+    /**
+     * Ack cursor of the event journal
+     */
+    static final int EVENT_JOURNAL = 0;
+
+    /**
+     * Ack cursor of the critical event journal
+     */
+    static final int CRITICAL_JOURNAL = 1;
+
+    /**
+     * Ack cursor of the profile journal
+     */
+    static final int PROFILE_JOURNAL = 2;
+
+    private static final int JOURNALS = 3;
+
+    /**
+     * Slot magic ("M6S" + version)
+     */
+    private static final int MAGIC = 0x4D365301;
+
+    static final int SLOT_SIZE = 1024;
+
+    private static final int SEQUENCE = 4;
+    private static final int PREVIOUS_TIMESTAMP = 12;
+    private static final int CURSORS = 20;
+    private static final int USER_ID = CURSORS + JOURNALS * 16;
+    private static final int PREVIOUS_EVENT = USER_ID + 128;
+    private static final int CRC = SLOT_SIZE - 4;
+
+    static final int MAX_USER_ID = PREVIOUS_EVENT - USER_ID - 2;
+    static final int MAX_PREVIOUS_EVENT = CRC - PREVIOUS_EVENT - 2;
+
+    /**
+     * State file (null when kept in memory only)
+     */
+    private final RandomAccessFile file;
+
+    private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;
+
+    private String userId;
+
+    private String previousEvent;
+
+    private long previousTimestamp;
+
+    private final long[] cursors = new long[JOURNALS * 2];
+
+    private M6StateStore(RandomAccessFile file) {
+        this.file = file;
+        for (int i = 0; i < JOURNALS; i++) {
+            cursors[i * 2] = -1;
+        }
+    }
+
+    /**
+     * Opens the state file in given directory (created when missing) and reads the latest valid slot
+     *
+     * @param directory SDK files directory
+     * @return state store
+     */
+    static M6StateStore open(File directory) {
+        RandomAccessFile file = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create " + directory);
+            }
+            file = new RandomAccessFile(new File(directory, FILE_NAME), "rw");
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't open state file, state is kept in memory only", e);
+        }
+        M6StateStore store = new M6StateStore(file);
+        if (file != null) {
+            store.read();
+        }
+        return store;
+    }
+
+    synchronized String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Saves the user id (synchronously, durable)
+     *
+     * @param userId user id (at most MAX_USER_ID bytes of UTF-8)
+     */
+    synchronized void setUserId(String userId) {
+        if (userId != null && utf8(userId).length > MAX_USER_ID) {
+            throw new IllegalArgumentException("User id too long: " + userId);
+        }
+        this.userId = userId;
+        try {
+            save(true);
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't write state file", e);
+        }
+    }
+
+    /**
+     * @return name of the previous event or null if none was saved
+     */
+    synchronized String getPreviousEvent() {
+        return previousEvent;
+    }
+
+    synchronized long getPreviousTimestamp() {
+        return previousTimestamp;
+    }
+
+    /**
+     * Saves the cursor of the previous event. Not synchronized with the disk (losing it only restarts the chain).
+     * Name longer than MAX_PREVIOUS_EVENT bytes is not saved
+     *
+     * @param eventName name of the previous event
+     * @param timestamp time of the previous event
+     */
+    synchronized void setPreviousEvent(String eventName, long timestamp) {
+        if (eventName != null && utf8(eventName).length > MAX_PREVIOUS_EVENT) {
+            M6Log.w("SixthMass", "Event name too long for the state file, chain starts again on next start");
+            eventName = null;
+        }
+        this.previousEvent = eventName;
+        this.previousTimestamp = timestamp;
+        try {
+            save(false);
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't write state file", e);
+        }
+    }
+
+    /**
+     * @param journal EVENT_JOURNAL, CRITICAL_JOURNAL or PROFILE_JOURNAL
+     * @return true if ack cursor of the journal was saved
+     */
+    synchronized boolean hasAckCursor(int journal) {
+        return cursors[journal * 2] >= 0;
+    }
+
+    synchronized long getAckSegment(int journal) {
+        return cursors[journal * 2];
+    }
+
+    synchronized long getAckOffset(int journal) {
+        return cursors[journal * 2 + 1];
+    }
+
+    /**
+     * Saves ack cursor of the journal (synchronously, durable, segments behind it are deleted afterwards)
+     *
+     * @param journal EVENT_JOURNAL, CRITICAL_JOURNAL or PROFILE_JOURNAL
+     * @param segment acknowledged segment id
+     * @param offset acknowledged offset in the segment
+     * @throws IOException Exception writing the state file
+     */
+    synchronized void setAckCursor(int journal, long segment, long offset) throws IOException {
+        cursors[journal * 2] = segment;
+        cursors[journal * 2 + 1] = offset;
+        save(true);
+    }
+
+    /**
+     * Reads both slots and takes the valid one with the higher sequence
+     */
+    private void read() {
+        byte[] first = readSlot(0);
+        byte[] second = readSlot(1);
+        long firstSequence = first != null ? ByteBuffer.wrap(first).getLong(SEQUENCE) : -1;
+        long secondSequence = second != null ? ByteBuffer.wrap(second).getLong(SEQUENCE) : -1;
+        byte[] latest = firstSequence >= secondSequence ? first : second;
+        if (latest == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(latest);
+        sequence = buffer.getLong(SEQUENCE);
+        previousTimestamp = buffer.getLong(PREVIOUS_TIMESTAMP);
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = buffer.getLong(CURSORS + i * 8);
+        }
+        userId = readString(buffer, USER_ID);
+        previousEvent = readString(buffer, PREVIOUS_EVENT);
+    }
+
+    /**
+     * @return slot bytes or null if slot is missing, torn or written by an unknown version
+     */
+    private byte[] readSlot(int index) {
+        byte[] bytes = new byte[SLOT_SIZE];
+        try {
+            if (file.length() < (index + 1) * SLOT_SIZE) {
+                return null;
+            }
+            file.seek(index * SLOT_SIZE);
+            file.readFully(bytes);
+        } catch (IOException e) {
+            M6Log.e("SixthMass", "Can't read state file", e);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        crc.reset();
+        crc.update(bytes, 0, CRC);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(CRC) != (int) crc.getValue()) {
+            return null;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes complete state into the slot not holding the latest state
+     *
+     * @param sync true to wait until the slot is on the disk
+     * @throws IOException Exception writing the state file
+     */
+    private void save(boolean sync) throws IOException {
+        if (file == null) {
+            return;
+        }
+        long next = sequence + 1;
+        byte[] bytes = slot.array();
+        Arrays.fill(bytes, (byte) 0);
+        slot.putInt(0, MAGIC);
+        slot.putLong(SEQUENCE, next);
+        slot.putLong(PREVIOUS_TIMESTAMP, previousTimestamp);
+        for (int i = 0; i < cursors.length; i++) {
+            slot.putLong(CURSORS + i * 8, cursors[i]);
+        }
+        writeString(slot, USER_ID, userId);
+        writeString(slot, PREVIOUS_EVENT, previousEvent);
+        crc.reset();
+        crc.update(bytes, 0, CRC);
+        slot.putInt(CRC, (int) crc.getValue());
+        file.seek((next & 1) * SLOT_SIZE);
+        file.write(bytes);
+        if (sync) {
+            file.getFD().sync();
+        }
+        sequence = next;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        short length = buffer.getShort(offset);
+        if (length < 0) {
+            return null;
+        }
+        try {
+            return new String(buffer.array(), offset + 2, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(ByteBuffer buffer, int offset, String value) {
+        if (value == null) {
+            buffer.putShort(offset, (short) -1);
+            return;
+        }
+        byte[] bytes = utf8(value);
+        buffer.putShort(offset, (short) bytes.length);
+        System.arraycopy(bytes, 0, buffer.array(), offset + 2, bytes.length);
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Small key-value storage for SDK state (user id, acknowledged profile hashes, previous event) and directory for
+ * the journals
+ *
+ * Same contract as Android SharedPreferences: edits are collected in an editor and written together by commit
+ * (synchronous) or apply (may be written later, visible to readers right away).
+ *
+ * @since 0.0.5
+ */
+public interface M6Storage {
+
+    /**
+     * @return directory the journals are created in
+     */
+    File getFilesDir();
+
+    String getString(String key, String defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    boolean contains(String key);
+
+    /**
+     * @return all stored values (must not be modified)
+     */
+    Map<String, ?> getAll();
+
+    /**
+     * @return new editor
+     */
+    Editor edit();
+
+    /**
+     * Collects changes written together
+     */
+    interface Editor {
+
+        Editor putString(String key, String value);
+
+        Editor putLong(String key, long value);
+
+        Editor remove(String key);
+
+        /**
+         * Writes changes synchronously
+         *
+         * @return true if changes were written
+         */
+        boolean commit();
+
+        /**
+         * Writes changes asynchronously
+         */
+        void apply();
+    }
+}
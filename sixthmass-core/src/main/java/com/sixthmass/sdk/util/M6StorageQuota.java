@@ -0,0 +1,82 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage budget for events waiting to be sent (e.g. while the device is offline)
+ *
+ * Once unsent events take more than max bytes, events are dropped by the eviction policy until they fit again.
+ * Events older than max age are dropped regardless of the size. Dropped events are counted (see
+ * M6Config.getDroppedEvents).
+ *
+ * @since 0.0.5
+ */
+public final class M6StorageQuota {
+
+    /**
+     * Default quota: 4 MB, 7 days, oldest events dropped first
+     */
+    public static final M6StorageQuota DEFAULT = new M6StorageQuota(4 * 1024 * 1024, TimeUnit.DAYS.toMillis(7), M6EvictionPolicy.DROP_OLDEST);
+
+    /**
+     * Smallest allowed max bytes (a few journal segments)
+     */
+    public static final long MIN_BYTES = 64 * 1024;
+
+    /**
+     * Maximum size of unsent events on disk in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Maximum age of unsent event in milliseconds
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * Which events are dropped first
+     */
+    private final M6EvictionPolicy evictionPolicy;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes maximum size of unsent events on disk in bytes (at least MIN_BYTES)
+     * @param maxAgeMillis maximum age of unsent event in milliseconds
+     * @param evictionPolicy which events are dropped first when over max bytes
+     */
+    public M6StorageQuota(long maxBytes, long maxAgeMillis, M6EvictionPolicy evictionPolicy) {
+        if (maxBytes < MIN_BYTES || maxAgeMillis < 1 || evictionPolicy == null) {
+            throw new IllegalArgumentException("Invalid storage quota");
+        }
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public M6EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+}
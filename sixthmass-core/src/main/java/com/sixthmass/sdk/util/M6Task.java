@@ -0,0 +1,372 @@
+package com.sixthmass.sdk.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Created by Igor Rendulic on 4/24/17.
+
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+/**
+ * Task object holding single event values
+ *
+ * This object is for internals of SixthMass SDK and should not be modified.
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class M6Task implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Name of the event
+     */
+    public String eventName;
+
+    /**
+     * Previous event name
+     */
+    public String previousEvent;
+
+    /**
+     * Miliseconds since epoch at the time of the event
+     */
+    public Long timestamp;
+
+    /**
+     * Miliseconds since epoch at the time of the previous event
+     */
+    public Long previousTimestamp;
+
+    /**
+     * Device and SDK values shared with all events captured under the same device state
+     */
+    private M6DeviceContext deviceContext;
+
+    /**
+     * User and session shared with all events of the session
+     */
+    private M6SessionContext sessionContext;
+
+    /**
+     * Not used in this version but meant to be info on where the user came from
+     */
+    private String refDomain; //TODO: where did user come from
+
+    /**
+     * Duration of the current session
+     */
+    private Double sessionDuration;
+
+    /**
+     * List of purchased items
+     */
+    private List<M6Item> purchasedItems; //TODO: add support
+
+    /**
+     * Custom event properties
+     */
+    private Map<String,String> properties;
+
+    /**
+     * Internal variable for marking events which have been sent to the server
+     */
+    protected boolean sent;
+
+    /**
+     * M6Clock.elapsedRealtime at the time of the event (monotonic, only valid in the same process)
+     */
+    transient long monotonicTime;
+
+    /**
+     * Init method for this object
+     *
+     * Captures only what has to be taken on the calling thread: event name, wall clock and monotonic time,
+     * immutable copy of the properties and current session. Device info is attached later on the consumer
+     * thread (see enrich)
+     *
+     * Event tracked before init has no session and is stamped with the clock of the platform (see
+     * M6Config.setPlatformClock) so it keeps its place among events tracked after init. User is attached on the
+     * consumer thread once stored state is loaded
+     *
+     * @param name name of the event
+     * @param properties custom properties for this event
+     */
+    public M6Task(String name, Map<String,String> properties) {
+        M6Config config = M6Config.instanceOrNull();
+        this.eventName = name;
+        this.properties = M6Properties.copyOf(properties);
+        M6Clock clock = config != null ? config.getClock() : M6Config.getPlatformClock();
+        this.timestamp = clock.currentTimeMillis();
+        this.monotonicTime = clock.elapsedRealtime();
+        if (config != null) {
+            this.sessionContext = config.getSessionContext();
+        }
+    }
+
+    /**
+     * Augmenting current event with previous event (previous event name and timestamp)
+     *
+     * @param previousTask previous task
+     */
+    public void augmentTask(M6Task previousTask) {
+        if (previousTask != null) {
+            this.previousEvent = previousTask.eventName;
+            this.previousTimestamp = previousTask.timestamp;
+        }
+    }
+
+    /**
+     * Constructor used when migrating tasks stored by older SDK versions
+     *
+     * @param name name of the event
+     * @param properties custom properties for this event
+     * @param timestamp time of the event
+     * @param deviceContext device values
+     * @param sessionContext user and session
+     * @param sessionDuration duration of the session at the time of the event
+     */
+    M6Task(String name, Map<String,String> properties, Long timestamp, M6DeviceContext deviceContext,
+           M6SessionContext sessionContext, Double sessionDuration) {
+        this.eventName = name;
+        this.properties = properties;
+        this.timestamp = timestamp;
+        this.deviceContext = deviceContext;
+        this.sessionContext = sessionContext;
+        this.sessionDuration = sessionDuration;
+    }
+
+    /**
+     * Attaching shared device context, session duration and user (if tracked before it was known) to the event.
+     * Runs on the consumer thread
+     *
+     * @param config SDK configuration
+     */
+    void enrich(M6Config config) {
+        if (this.sessionContext == null || this.sessionContext.getUserId() == null) {
+            this.sessionContext = config.withUser(this.sessionContext);
+        }
+        if (this.deviceContext == null) {
+            this.deviceContext = config.getDeviceContext(this.timestamp);
+        }
+        if (this.sessionDuration == null && this.sessionContext != null && this.sessionContext.getSessionId() != null) {
+            // monotonic, wall clock may be changed by the user during the session
+            this.sessionDuration = (double) ((this.monotonicTime - this.sessionContext.getMonotonicStart()) / 1000);
+        }
+    }
+
+    M6DeviceContext getDeviceContext() {
+        return this.deviceContext;
+    }
+
+    M6SessionContext getSessionContext() {
+        return this.sessionContext;
+    }
+
+    Double getSessionDuration() {
+        return this.sessionDuration;
+    }
+
+    String getRefDomain() {
+        return this.refDomain;
+    }
+
+    void setRefDomain(String refDomain) {
+        this.refDomain = refDomain;
+    }
+
+    Map<String,String> getProperties() {
+        return this.properties;
+    }
+
+    /**
+     * Returning purchased items from task
+     *
+     * @return M6Item
+     */
+    protected List<M6Item> getPurchasedItems() {
+        return this.purchasedItems;
+    }
+
+
+    /**
+     * Creates an array if needed and adds all items to the task
+     *
+     * @param items list of purchased items
+     */
+    protected void setPurchasedItems(List<M6Item> items) {
+        if (this.purchasedItems == null) {
+            this.purchasedItems = new ArrayList<>();
+        }
+        purchasedItems.addAll(items);
+    }
+
+    /**
+     * Adding purchase items one by one to task
+     *
+     * @param item M6item
+     */
+    protected void addPurchasedItem(M6Item item) {
+        if (this.purchasedItems == null) {
+            this.purchasedItems = new ArrayList<>();
+        }
+        this.purchasedItems.add(item);
+    }
+
+    /**
+     * Convert to json compatible with sixthmass servers
+     *
+     * @return json representation of this object
+     * @throws JSONException Exception when conversion failed
+     */
+    public JSONObject toJson() throws JSONException {
+
+        JSONObject json = new JSONObject();
+        json.put("e", this.eventName);
+        json.put("p", this.previousEvent);
+        json.put("ts", this.timestamp);
+        json.put("pTs", this.previousTimestamp);
+        json.put("uId", this.sessionContext.getUserId());
+        json.put("cId", this.deviceContext.getClientId());
+        json.put("sId", this.sessionContext.getSessionId());
+        json.put("sessDuration", this.sessionDuration);
+        json.put("timezone", this.deviceContext.getTimezone());
+        json.put("tzOffset", this.deviceContext.getTzOffset());
+        json.put("libVer", this.deviceContext.getLibVer());
+        json.put("refDomain", this.refDomain);
+        json.put("browser", this.deviceContext.getBrowser());
+        json.put("browserVersion", this.deviceContext.getBrowserVersion());
+        json.put("searchQuery", null);
+        json.put("os", this.deviceContext.getOs());
+        json.put("device", this.deviceContext.getDevice());
+        json.put("lang", this.deviceContext.getLanguage());
+        if (this.properties != null) {
+            JSONObject customProperties = new JSONObject(this.properties);
+            json.put("customValues", customProperties);
+        }
+        JSONArray purchaseItemsArray = null;
+        if (this.purchasedItems != null) {
+            purchaseItemsArray = new JSONArray();
+            for (M6Item item : this.purchasedItems) {
+                purchaseItemsArray.put(item.toJson());
+            }
+        }
+        if (purchaseItemsArray != null) {
+            json.put("pItems", purchaseItemsArray);
+        }
+
+        return json;
+    }
+
+    /**
+     * Writes the same json as toJson straight to the writer
+     *
+     * @param writer json writer
+     * @throws JSONException Exception when conversion failed
+     */
+    void writeJson(M6JsonWriter writer) throws JSONException {
+        writer.beginObject()
+                .field("e", this.eventName)
+                .field("p", this.previousEvent)
+                .field("ts", this.timestamp)
+                .field("pTs", this.previousTimestamp)
+                .field("uId", this.sessionContext.getUserId())
+                .field("cId", this.deviceContext.getClientId())
+                .field("sId", this.sessionContext.getSessionId())
+                .field("sessDuration", this.sessionDuration)
+                .field("timezone", this.deviceContext.getTimezone())
+                .field("tzOffset", this.deviceContext.getTzOffset())
+                .field("libVer", this.deviceContext.getLibVer())
+                .field("refDomain", this.refDomain)
+                .field("browser", this.deviceContext.getBrowser())
+                .field("browserVersion", this.deviceContext.getBrowserVersion())
+                .field("os", this.deviceContext.getOs())
+                .field("device", this.deviceContext.getDevice())
+                .field("lang", this.deviceContext.getLanguage())
+                .field("customValues", this.properties);
+        writePurchasedItems(writer);
+        writer.endObject();
+    }
+
+    /**
+     * Writes values shared by events of the same device and session (batch envelope header)
+     *
+     * @param writer json writer
+     * @throws JSONException Exception when conversion failed
+     */
+    void writeHeaderJson(M6JsonWriter writer) throws JSONException {
+        writer.beginObject()
+                .field("uId", this.sessionContext.getUserId())
+                .field("cId", this.deviceContext.getClientId())
+                .field("sId", this.sessionContext.getSessionId())
+                .field("timezone", this.deviceContext.getTimezone())
+                .field("tzOffset", this.deviceContext.getTzOffset())
+                .field("libVer", this.deviceContext.getLibVer())
+                .field("browser", this.deviceContext.getBrowser())
+                .field("browserVersion", this.deviceContext.getBrowserVersion())
+                .field("os", this.deviceContext.getOs())
+                .field("device", this.deviceContext.getDevice())
+                .field("lang", this.deviceContext.getLanguage())
+                .endObject();
+    }
+
+    /**
+     * Writes compact event for batch envelope (without values from the header)
+     *
+     * @param writer json writer
+     * @throws JSONException Exception when conversion failed
+     */
+    void writeEventJson(M6JsonWriter writer) throws JSONException {
+        writer.beginObject()
+                .field("e", this.eventName)
+                .field("p", this.previousEvent)
+                .field("ts", this.timestamp)
+                .field("pTs", this.previousTimestamp)
+                .field("sessDuration", this.sessionDuration)
+                .field("refDomain", this.refDomain)
+                .field("customValues", this.properties);
+        writePurchasedItems(writer);
+        writer.endObject();
+    }
+
+    private void writePurchasedItems(M6JsonWriter writer) throws JSONException {
+        if (this.purchasedItems != null) {
+            writer.name("pItems").beginArray();
+            for (M6Item item : this.purchasedItems) {
+                item.writeJson(writer);
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Checks if both events share the same batch envelope header
+     *
+     * @param other other task
+     * @return true if device and session context are equal
+     */
+    boolean hasSameContext(M6Task other) {
+        return M6Util.equal(this.deviceContext, other.deviceContext) && M6Util.equal(this.sessionContext, other.sessionContext);
+    }
+}
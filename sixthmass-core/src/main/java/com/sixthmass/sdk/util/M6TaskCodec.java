@@ -0,0 +1,708 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codec for journal records (one M6Task per record, or one profile delta per record in profile journal)
+ *
+ * Record layout: version byte, varint bitmap of present fields, followed by present fields in bitmap order.
+ * Integers are (zigzag) varints, doubles 8 bytes, strings varint length prefixed UTF-8 (lone surrogates are
+ * kept as 3 byte sequences so every string survives the round trip). Device and session context are
+ * nested with their own bitmaps.
+ *
+ * Records written by Java serialization (0xACED stream magic) are still decoded so journals written before
+ * this format can be sent.
+ *
+ * Codec is not thread safe. It reuses the encoding buffer and shares equal contexts of consecutively
+ * decoded tasks.
+ *
+ * @since 0.0.5
+ */
+final class M6TaskCodec {
+
+    /**
+     * Current record format version
+     */
+    static final int VERSION = 1;
+
+    // task fields
+    private static final int EVENT_NAME = 1;
+    private static final int PREVIOUS_EVENT = 1 << 1;
+    private static final int TIMESTAMP = 1 << 2;
+    private static final int PREVIOUS_TIMESTAMP = 1 << 3;
+    private static final int SESSION_DURATION = 1 << 4;
+    private static final int SESSION_DURATION_INTEGRAL = 1 << 5;
+    private static final int REF_DOMAIN = 1 << 6;
+    private static final int PROPERTIES = 1 << 7;
+    private static final int PURCHASED_ITEMS = 1 << 8;
+    private static final int DEVICE_CONTEXT = 1 << 9;
+    private static final int SESSION_CONTEXT = 1 << 10;
+    private static final int SENT = 1 << 11;
+
+    // device context fields
+    private static final int CLIENT_ID = 1;
+    private static final int LIB_VER = 1 << 1;
+    private static final int TIMEZONE = 1 << 2;
+    private static final int TZ_OFFSET = 1 << 3;
+    private static final int OS = 1 << 4;
+    private static final int BROWSER = 1 << 5;
+    private static final int BROWSER_VERSION = 1 << 6;
+    private static final int DEVICE = 1 << 7;
+    private static final int LANGUAGE = 1 << 8;
+
+    // session context fields
+    private static final int USER_ID = 1;
+    private static final int SESSION_ID = 1 << 1;
+
+    // item fields
+    private static final int ITEM_ID = 1;
+    private static final int ITEM_NAME = 1 << 1;
+    private static final int ITEM_PRICE = 1 << 2;
+    private static final int ITEM_QUANTITY = 1 << 3;
+
+    // profile fields
+    private static final int PROFILE_CLIENT_ID = 1;
+    private static final int PROFILE_USER_ID = 1 << 1;
+    private static final int REMOTE_USER_ID = 1 << 2;
+    private static final int EMAIL = 1 << 3;
+    private static final int FIRST_NAME = 1 << 4;
+    private static final int LAST_NAME = 1 << 5;
+    private static final int GENDER = 1 << 6;
+    private static final int BUSINESS_NAME = 1 << 7;
+    private static final int BIRTHDAY = 1 << 8;
+    private static final int PROFILE_TZ_OFFSET = 1 << 9;
+    private static final int PUSH_TOKEN = 1 << 10;
+    private static final int DEVICE_UUID = 1 << 11;
+    private static final int IS_BUSINESS = 1 << 12;
+    private static final int BUSINESS = 1 << 13;
+    private static final int CUSTOM_VALUES = 1 << 14;
+
+    /**
+     * Java serialization stream magic (records written by earlier versions)
+     */
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Encoding buffer (grows as needed)
+     */
+    private byte[] buffer = new byte[512];
+    private int position;
+
+    /**
+     * Decoded record and read position
+     */
+    private byte[] record;
+    private int offset;
+    private int limit;
+
+    /**
+     * Reusable char buffer for decoding strings
+     */
+    private char[] chars = new char[128];
+
+    /**
+     * Last decoded contexts (equal contexts of consecutive records are shared)
+     */
+    private M6DeviceContext lastDevice;
+    private M6SessionContext lastSession;
+
+    /**
+     * Encodes the task into internal buffer
+     *
+     * @param task task
+     * @return length of the record in the buffer (see getBuffer)
+     */
+    int encode(M6Task task) {
+        position = 0;
+        writeByte(VERSION);
+        Double duration = task.getSessionDuration();
+        boolean integral = duration != null && duration == Math.rint(duration) && Math.abs(duration) < Long.MAX_VALUE
+                && !(duration == 0 && 1 / duration < 0);
+        int fields = (task.eventName != null ? EVENT_NAME : 0)
+                | (task.previousEvent != null ? PREVIOUS_EVENT : 0)
+                | (task.timestamp != null ? TIMESTAMP : 0)
+                | (task.previousTimestamp != null ? PREVIOUS_TIMESTAMP : 0)
+                | (duration != null ? (integral ? SESSION_DURATION_INTEGRAL : SESSION_DURATION) : 0)
+                | (task.getRefDomain() != null ? REF_DOMAIN : 0)
+                | (task.getProperties() != null ? PROPERTIES : 0)
+                | (task.getPurchasedItems() != null ? PURCHASED_ITEMS : 0)
+                | (task.getDeviceContext() != null ? DEVICE_CONTEXT : 0)
+                | (task.getSessionContext() != null ? SESSION_CONTEXT : 0)
+                | (task.sent ? SENT : 0);
+        writeVarLong(fields);
+        if (task.eventName != null) {
+            writeString(task.eventName);
+        }
+        if (task.previousEvent != null) {
+            writeString(task.previousEvent);
+        }
+        if (task.timestamp != null) {
+            writeSignedVarLong(task.timestamp);
+        }
+        if (task.previousTimestamp != null) {
+            // usually close to timestamp, delta is short
+            writeSignedVarLong(task.timestamp != null ? task.timestamp - task.previousTimestamp : task.previousTimestamp);
+        }
+        if (duration != null) {
+            if (integral) {
+                writeSignedVarLong(duration.longValue());
+            } else {
+                writeDouble(duration);
+            }
+        }
+        if (task.getRefDomain() != null) {
+            writeString(task.getRefDomain());
+        }
+        if (task.getProperties() != null) {
+            writeProperties(task.getProperties());
+        }
+        if (task.getPurchasedItems() != null) {
+            List<M6Item> items = task.getPurchasedItems();
+            writeVarLong(items.size());
+            for (M6Item item : items) {
+                writeItem(item);
+            }
+        }
+        if (task.getDeviceContext() != null) {
+            writeDeviceContext(task.getDeviceContext());
+        }
+        if (task.getSessionContext() != null) {
+            writeSessionContext(task.getSessionContext());
+        }
+        return position;
+    }
+
+    /**
+     * Buffer holding the last encoded record
+     *
+     * @return buffer (valid until next encode)
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Decodes a journal record
+     *
+     * @param record journal record (current or legacy Java serialization format)
+     * @return task or null if record can't be decoded
+     */
+    M6Task decode(byte[] record) {
+        try {
+            if (record.length >= 2 && ((record[0] & 0xFF) << 8 | (record[1] & 0xFF)) == JAVA_SERIALIZATION_MAGIC) {
+                return decodeSerialized(record);
+            }
+            this.record = record;
+            this.offset = 0;
+            this.limit = record.length;
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown record version " + version);
+            }
+            return readTask();
+        } catch (Exception e) {
+            M6Log.e("SixthMass", "Can't decode journal record", e);
+            return null;
+        } finally {
+            this.record = null;
+        }
+    }
+
+    /**
+     * Decodes only the event name of a journal record (rest of the record is not read)
+     *
+     * @param record buffer holding the journal record
+     * @param length length of the record
+     * @return event name or null if record has none or can't be decoded
+     */
+    String decodeEventName(byte[] record, int length) {
+        try {
+            if (length >= 2 && ((record[0] & 0xFF) << 8 | (record[1] & 0xFF)) == JAVA_SERIALIZATION_MAGIC) {
+                M6Task task = decodeSerialized(Arrays.copyOf(record, length));
+                return task != null ? task.eventName : null;
+            }
+            this.record = record;
+            this.offset = 0;
+            this.limit = length;
+            if (readByte() != VERSION) {
+                return null;
+            }
+            return (readVarLong() & EVENT_NAME) != 0 ? readString() : null;
+        } catch (Exception e) {
+            M6Log.e("SixthMass", "Can't decode journal record", e);
+            return null;
+        } finally {
+            this.record = null;
+        }
+    }
+
+    /**
+     * Encodes profile delta into internal buffer
+     *
+     * @param profile profile delta
+     * @return length of the record in the buffer (see getBuffer)
+     */
+    int encodeProfile(SixthMassUserProfile profile) {
+        position = 0;
+        writeByte(VERSION);
+        Boolean isBusiness = profile.getIsBusiness();
+        writeVarLong((profile.getClientId() != null ? PROFILE_CLIENT_ID : 0)
+                | (profile.getUserId() != null ? PROFILE_USER_ID : 0)
+                | (profile.getRemoteUserId() != null ? REMOTE_USER_ID : 0)
+                | (profile.getEmail() != null ? EMAIL : 0)
+                | (profile.getFirstName() != null ? FIRST_NAME : 0)
+                | (profile.getLastName() != null ? LAST_NAME : 0)
+                | (profile.getGender() != null ? GENDER : 0)
+                | (profile.getBusinessName() != null ? BUSINESS_NAME : 0)
+                | (profile.getBirthday() != null ? BIRTHDAY : 0)
+                | (profile.getTzOffset() != null ? PROFILE_TZ_OFFSET : 0)
+                | (profile.getAndroidPushToken() != null ? PUSH_TOKEN : 0)
+                | (profile.getDeviceUUID() != null ? DEVICE_UUID : 0)
+                | (isBusiness != null ? IS_BUSINESS : 0)
+                | (isBusiness != null && isBusiness ? BUSINESS : 0)
+                | (profile.getCustomValues() != null ? CUSTOM_VALUES : 0));
+        writeOptional(profile.getClientId());
+        writeOptional(profile.getUserId());
+        writeOptional(profile.getRemoteUserId());
+        writeOptional(profile.getEmail());
+        writeOptional(profile.getFirstName());
+        writeOptional(profile.getLastName());
+        writeOptional(profile.getGender());
+        writeOptional(profile.getBusinessName());
+        if (profile.getBirthday() != null) {
+            writeSignedVarLong(profile.getBirthday().getTime());
+        }
+        if (profile.getTzOffset() != null) {
+            writeSignedVarLong(profile.getTzOffset());
+        }
+        writeOptional(profile.getAndroidPushToken());
+        writeOptional(profile.getDeviceUUID());
+        if (profile.getCustomValues() != null) {
+            writeProperties(profile.getCustomValues());
+        }
+        return position;
+    }
+
+    /**
+     * Decodes profile journal record
+     *
+     * @param record journal record
+     * @return profile delta or null if record can't be decoded
+     */
+    SixthMassUserProfile decodeProfile(byte[] record) {
+        try {
+            this.record = record;
+            this.offset = 0;
+            this.limit = record.length;
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown record version " + version);
+            }
+            long fields = readVarLong();
+            SixthMassUserProfile profile = new SixthMassUserProfile();
+            profile.setClientId((fields & PROFILE_CLIENT_ID) != 0 ? readString() : null);
+            profile.setUserId((fields & PROFILE_USER_ID) != 0 ? readString() : null);
+            profile.setRemoteUserId((fields & REMOTE_USER_ID) != 0 ? readString() : null);
+            profile.setEmail((fields & EMAIL) != 0 ? readString() : null);
+            profile.setFirstName((fields & FIRST_NAME) != 0 ? readString() : null);
+            profile.setLastName((fields & LAST_NAME) != 0 ? readString() : null);
+            profile.setGender((fields & GENDER) != 0 ? readString() : null);
+            if ((fields & BUSINESS_NAME) != 0) {
+                profile.setBusinessName(readString());
+            }
+            profile.setBirthday((fields & BIRTHDAY) != 0 ? new Date(readSignedVarLong()) : null);
+            profile.setTzOffset((fields & PROFILE_TZ_OFFSET) != 0 ? (int) readSignedVarLong() : null);
+            profile.setAndroidPushToken((fields & PUSH_TOKEN) != 0 ? readString() : null);
+            profile.setDeviceUUID((fields & DEVICE_UUID) != 0 ? readString() : null);
+            if ((fields & IS_BUSINESS) != 0) {
+                // set after business name which also sets it
+                profile.setIsBusiness((fields & BUSINESS) != 0);
+            }
+            // profile deltas are merged into each other, custom values have to stay mutable
+            profile.setCustomValues((fields & CUSTOM_VALUES) != 0 ? new LinkedHashMap<>(readProperties()) : null);
+            return profile;
+        } catch (Exception e) {
+            M6Log.e("SixthMass", "Can't decode profile journal record", e);
+            return null;
+        } finally {
+            this.record = null;
+        }
+    }
+
+    private M6Task readTask() throws IOException {
+        long fields = readVarLong();
+        String eventName = (fields & EVENT_NAME) != 0 ? readString() : null;
+        String previousEvent = (fields & PREVIOUS_EVENT) != 0 ? readString() : null;
+        Long timestamp = (fields & TIMESTAMP) != 0 ? readSignedVarLong() : null;
+        Long previousTimestamp = null;
+        if ((fields & PREVIOUS_TIMESTAMP) != 0) {
+            long value = readSignedVarLong();
+            previousTimestamp = timestamp != null ? timestamp - value : value;
+        }
+        Double duration = null;
+        if ((fields & SESSION_DURATION_INTEGRAL) != 0) {
+            duration = (double) readSignedVarLong();
+        } else if ((fields & SESSION_DURATION) != 0) {
+            duration = readDouble();
+        }
+        String refDomain = (fields & REF_DOMAIN) != 0 ? readString() : null;
+        Map<String,String> properties = (fields & PROPERTIES) != 0 ? readProperties() : null;
+        List<M6Item> items = null;
+        if ((fields & PURCHASED_ITEMS) != 0) {
+            int count = readLength();
+            items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(readItem());
+            }
+        }
+        M6DeviceContext device = (fields & DEVICE_CONTEXT) != 0 ? readDeviceContext() : null;
+        M6SessionContext session = (fields & SESSION_CONTEXT) != 0 ? readSessionContext() : null;
+
+        M6Task task = new M6Task(eventName, properties, timestamp, device, session, duration);
+        task.previousEvent = previousEvent;
+        task.previousTimestamp = previousTimestamp;
+        task.setRefDomain(refDomain);
+        task.sent = (fields & SENT) != 0;
+        if (items != null) {
+            task.setPurchasedItems(items);
+        }
+        return task;
+    }
+
+    /**
+     * Decodes record written with Java serialization (also tasks with per event device values)
+     */
+    private M6Task decodeSerialized(byte[] record) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new M6LegacyTask.LegacyObjectInputStream(new ByteArrayInputStream(record));
+        try {
+            Object task = in.readObject();
+            return task instanceof M6LegacyTask ? ((M6LegacyTask) task).toTask(null) : (M6Task) task;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeProperties(Map<String,String> properties) {
+        writeVarLong(properties.size());
+        for (Map.Entry<String,String> entry : properties.entrySet()) {
+            writeNullableString(entry.getKey());
+            writeNullableString(entry.getValue());
+        }
+    }
+
+    private Map<String,String> readProperties() throws IOException {
+        int count = readLength();
+        String[] entries = new String[count * 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = readNullableString();
+        }
+        return new M6Properties(entries);
+    }
+
+    private void writeItem(M6Item item) {
+        writeVarLong((item.id != null ? ITEM_ID : 0) | (item.n != null ? ITEM_NAME : 0)
+                | (item.pr != null ? ITEM_PRICE : 0) | (item.q != null ? ITEM_QUANTITY : 0));
+        if (item.id != null) {
+            writeString(item.id);
+        }
+        if (item.n != null) {
+            writeString(item.n);
+        }
+        if (item.pr != null) {
+            writeDouble(item.pr);
+        }
+        if (item.q != null) {
+            writeSignedVarLong(item.q);
+        }
+    }
+
+    private M6Item readItem() throws IOException {
+        long fields = readVarLong();
+        String id = (fields & ITEM_ID) != 0 ? readString() : null;
+        String name = (fields & ITEM_NAME) != 0 ? readString() : null;
+        Double price = (fields & ITEM_PRICE) != 0 ? readDouble() : null;
+        Integer quantity = (fields & ITEM_QUANTITY) != 0 ? (int) readSignedVarLong() : null;
+        return new M6Item(id, name, price, quantity);
+    }
+
+    private void writeDeviceContext(M6DeviceContext device) {
+        writeVarLong((device.getClientId() != null ? CLIENT_ID : 0)
+                | (device.getLibVer() != null ? LIB_VER : 0)
+                | (device.getTimezone() != null ? TIMEZONE : 0)
+                | (device.getTzOffset() != null ? TZ_OFFSET : 0)
+                | (device.getOs() != null ? OS : 0)
+                | (device.getBrowser() != null ? BROWSER : 0)
+                | (device.getBrowserVersion() != null ? BROWSER_VERSION : 0)
+                | (device.getDevice() != null ? DEVICE : 0)
+                | (device.getLanguage() != null ? LANGUAGE : 0));
+        writeOptional(device.getClientId());
+        writeOptional(device.getLibVer());
+        writeOptional(device.getTimezone());
+        if (device.getTzOffset() != null) {
+            writeSignedVarLong(device.getTzOffset());
+        }
+        writeOptional(device.getOs());
+        writeOptional(device.getBrowser());
+        writeOptional(device.getBrowserVersion());
+        writeOptional(device.getDevice());
+        writeOptional(device.getLanguage());
+    }
+
+    private M6DeviceContext readDeviceContext() throws IOException {
+        long fields = readVarLong();
+        String clientId = (fields & CLIENT_ID) != 0 ? readString() : null;
+        String libVer = (fields & LIB_VER) != 0 ? readString() : null;
+        String timezone = (fields & TIMEZONE) != 0 ? readString() : null;
+        Integer tzOffset = (fields & TZ_OFFSET) != 0 ? (int) readSignedVarLong() : null;
+        String os = (fields & OS) != 0 ? readString() : null;
+        String browser = (fields & BROWSER) != 0 ? readString() : null;
+        String browserVersion = (fields & BROWSER_VERSION) != 0 ? readString() : null;
+        String device = (fields & DEVICE) != 0 ? readString() : null;
+        String language = (fields & LANGUAGE) != 0 ? readString() : null;
+        M6DeviceContext context = new M6DeviceContext(clientId, libVer, timezone, tzOffset, os, browser,
+                browserVersion, device, language, 0);
+        if (context.equals(lastDevice)) {
+            return lastDevice;
+        }
+        lastDevice = context;
+        return context;
+    }
+
+    private void writeSessionContext(M6SessionContext session) {
+        writeVarLong((session.getUserId() != null ? USER_ID : 0) | (session.getSessionId() != null ? SESSION_ID : 0));
+        writeOptional(session.getUserId());
+        writeOptional(session.getSessionId());
+        writeSignedVarLong(session.getSessionStart());
+    }
+
+    private M6SessionContext readSessionContext() throws IOException {
+        long fields = readVarLong();
+        String userId = (fields & USER_ID) != 0 ? readString() : null;
+        String sessionId = (fields & SESSION_ID) != 0 ? readString() : null;
+        M6SessionContext context = new M6SessionContext(userId, sessionId, readSignedVarLong());
+        if (context.equals(lastSession)) {
+            return lastSession;
+        }
+        lastSession = context;
+        return context;
+    }
+
+    private void writeOptional(String value) {
+        if (value != null) {
+            writeString(value);
+        }
+    }
+
+    /**
+     * Nullable string is prefixed with length + 1 (0 means null)
+     */
+    private void writeNullableString(String value) {
+        if (value == null) {
+            writeByte(0);
+        } else {
+            writeUtf8(value, 1);
+        }
+    }
+
+    private String readNullableString() throws IOException {
+        int length = readLength();
+        return length == 0 ? null : readUtf8(length - 1);
+    }
+
+    private void writeString(String value) {
+        writeUtf8(value, 0);
+    }
+
+    private String readString() throws IOException {
+        return readUtf8(readLength());
+    }
+
+    /**
+     * Writes UTF-8 bytes prefixed with their length (+ bias)
+     */
+    private void writeUtf8(String value, int bias) {
+        int length = value.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        writeVarLong(bytes + bias);
+        ensureCapacity(bytes);
+        byte[] out = buffer;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[p++] = (byte) c;
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xC0 | c >> 6);
+                out[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out[p++] = (byte) (0xF0 | cp >> 18);
+                out[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[p++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                // also lone surrogates, so they are not lost
+                out[p++] = (byte) (0xE0 | c >> 12);
+                out[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        position = p;
+    }
+
+    private String readUtf8(int bytes) throws IOException {
+        require(bytes);
+        if (chars.length < bytes) {
+            chars = new char[Math.max(bytes, chars.length * 2)];
+        }
+        byte[] in = record;
+        int p = offset;
+        int end = offset + bytes;
+        int n = 0;
+        while (p < end) {
+            int b = in[p++] & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+            } else if (b < 0xE0) {
+                if (p >= end) {
+                    throw new IOException("Malformed string");
+                }
+                chars[n++] = (char) ((b & 0x1F) << 6 | in[p++] & 0x3F);
+            } else if (b < 0xF0) {
+                if (p + 1 >= end) {
+                    throw new IOException("Malformed string");
+                }
+                chars[n++] = (char) ((b & 0x0F) << 12 | (in[p++] & 0x3F) << 6 | in[p++] & 0x3F);
+            } else {
+                if (p + 2 >= end) {
+                    throw new IOException("Malformed string");
+                }
+                int cp = (b & 0x07) << 18 | (in[p++] & 0x3F) << 12 | (in[p++] & 0x3F) << 6 | in[p++] & 0x3F;
+                chars[n++] = (char) (0xD7C0 + (cp >>> 10));
+                chars[n++] = (char) (0xDC00 + (cp & 0x3FF));
+            }
+        }
+        offset = end;
+        return new String(chars, 0, n);
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private int readByte() throws IOException {
+        require(1);
+        return record[offset++] & 0xFF;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Zigzag encoding keeps small negative numbers short
+     */
+    private void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Length or count which must fit into the rest of the record
+     */
+    private int readLength() throws IOException {
+        long length = readVarLong();
+        if (length < 0 || length > limit - offset + 1) {
+            throw new IOException("Corrupted length " + length);
+        }
+        return (int) length;
+    }
+
+    private void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    private double readDouble() throws IOException {
+        require(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = bits << 8 | (record[offset++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    private void require(int bytes) throws IOException {
+        if (bytes > limit - offset) {
+            throw new IOException("Truncated record");
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            byte[] grown = new byte[Math.max(position + bytes, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package com.sixthmass.sdk.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+  Created by Igor Rendulic on 4/24/17.
+
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+
+/**
+ *
+ * Worker class for persisting tasks into event journal and sending tasks to SixthMass server
+ * Worker is a single long lived consumer thread (started once by SixthMass on init) draining the task ring buffer
+ * Ring buffer is multi producer so track can be called from any thread without blocking it
+ *
+ * Consumer sleeps while ring buffer is empty and is woken up by producers only when it's actually sleeping.
+ * Drained tasks are appended to the journal and sent in batches by M6BatchUploader when the flush policy
+ * (number of events, bytes or age of the oldest event) says so. Consumer sleeps until the next flush is due.
+ *
+ * Critical events (purchase, registration) go through their own ring buffer and journal. They are drained and sent
+ * first, right away, and uploading of other events pauses between batches whenever critical ones are waiting.
+ * Critical journal is exempt from storage quota.
+ *
+ * Events tracked before the pipeline started wait in the pre-init ring buffer. They are drained first (before init
+ * they have no monotonic time) and get the user attached once stored state is loaded, which is the first thing the
+ * consumer does.
+ *
+ * Flush (requestFlush) makes the consumer send everything right away, bounded by a deadline. When the consumer is
+ * stopped (interrupted) it journals tasks still in the ring buffers before closing the journals.
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class M6TaskEmitter implements Runnable {
+
+    /**
+     * Maximum number of tasks drained from ring buffer in one pass
+     */
+    private static final int MAX_DRAIN = 256;
+
+    /**
+     * How long to wait after unexpected error (e.g. journal can't be written) before trying again
+     */
+    private static final long ERROR_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Orders tasks by the time they were tracked (tasks from different ring buffers)
+     */
+    private static final Comparator<M6Task> IN_ORDER = new Comparator<M6Task>() {
+        @Override
+        public int compare(M6Task a, M6Task b) {
+            return a.monotonicTime < b.monotonicTime ? -1 : (a.monotonicTime == b.monotonicTime ? 0 : 1);
+        }
+    };
+
+    /**
+     * Ring buffer with tasks from producers (track calls)
+     */
+    private final M6RingBuffer<M6Task> queue;
+
+    /**
+     * Ring buffer with critical tasks from producers (purchase, register)
+     */
+    private final M6RingBuffer<M6Task> criticalQueue;
+
+    /**
+     * Ring buffer with tasks tracked while no consumer was running (before init, after shutdown)
+     */
+    private final M6RingBuffer<M6Task> preInitQueue;
+
+    /**
+     * SDK Configuration
+     */
+    private final M6Config config;
+
+    /**
+     * Pipeline metrics
+     */
+    private final M6Metrics metrics;
+
+    /**
+     * Persistent event journal (opened on consumer thread)
+     */
+    private M6Journal journal;
+
+    /**
+     * Sends journaled events in batches
+     */
+    private M6BatchUploader uploader;
+
+    /**
+     * Persistent journal of critical events (opened on consumer thread)
+     */
+    private M6Journal criticalJournal;
+
+    /**
+     * Sends journaled critical events
+     */
+    private M6BatchUploader criticalUploader;
+
+    /**
+     * Keeps journaled events within the storage quota
+     */
+    private M6Evictor evictor;
+
+    /**
+     * Binary codec for journal records
+     */
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    /**
+     * Last event appended to the journal (used for linking previous event)
+     */
+    private M6ChainCursor chain;
+
+    /**
+     * Thread running this consumer
+     */
+    private volatile Thread consumer;
+
+    /**
+     * True while consumer is parked waiting for work
+     */
+    private volatile boolean waiting;
+
+    /**
+     * Guards flush requests and results
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Number of flushes requested (guarded by flushLock)
+     */
+    private long flushRequests;
+
+    /**
+     * Number of the last completed flush request (guarded by flushLock)
+     */
+    private long flushesCompleted;
+
+    /**
+     * Deadline (System.nanoTime) of the latest flush request (guarded by flushLock)
+     */
+    private long flushDeadline;
+
+    /**
+     * Events left unsent after the last completed flush, -1 if unknown (guarded by flushLock)
+     */
+    private long flushRemaining;
+
+    /**
+     * True while a flush request waits for the consumer
+     */
+    private volatile boolean flushPending;
+
+    /**
+     * Events left unsent when consumer stopped, -1 while running or if unknown
+     */
+    private volatile long unsentOnExit = -1;
+
+    /**
+     * This object's constructor initalizing queue of tasks and a configuration
+     *
+     * It also checks if SDK was initializaed properly
+     *
+     * @param queue Input event ring buffer
+     * @param criticalQueue Input ring buffer of critical events
+     * @param preInitQueue Input ring buffer of events tracked while no consumer was running
+     * @param config Configuration
+     * @throws SixthMassException Exception when SDK not initailized first
+     */
+    public M6TaskEmitter(M6RingBuffer<M6Task> queue, M6RingBuffer<M6Task> criticalQueue,
+                         M6RingBuffer<M6Task> preInitQueue, M6Config config) throws SixthMassException {
+
+        if (queue == null || criticalQueue == null || preInitQueue == null || config == null) {
+            throw new SixthMassException("SixthMass SDK Not initialized");
+        }
+        if (config.getToken() == null || config.getToken() == null) {
+            throw new SixthMassException("SixthMass SDK Not Properly initialized. Context and Token can not be null");
+        }
+
+        this.queue = queue;
+        this.criticalQueue = criticalQueue;
+        this.preInitQueue = preInitQueue;
+        this.config = config;
+        this.metrics = config.metrics();
+    }
+
+    /**
+     * Wakes up the consumer if it's waiting for work. Cheap when the consumer is busy (single volatile read)
+     */
+    public void wakeUp() {
+        if (waiting) {
+            Thread thread = consumer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Counts an event dropped before it reached the consumer (e.g. ring buffer full)
+     */
+    public void onDropped() {
+        metrics.eventsDropped.increment();
+    }
+
+    /**
+     * Counts events dropped before they reached the consumer
+     *
+     * @param count number of dropped events
+     */
+    void onDropped(long count) {
+        metrics.eventsDropped.add(count);
+    }
+
+    /**
+     * Counts an event published to the ring buffer (called on the producer thread)
+     *
+     * @param startNanos System.nanoTime when track was called
+     */
+    public void onEnqueued(long startNanos) {
+        metrics.eventsEnqueued.increment();
+        metrics.enqueueLatency.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Requests upload of all queued and journaled events regardless of the flush policy. Returns immediately
+     *
+     * Consumer persists everything published so far and sends both journals until they are empty, upload fails
+     * (backoff and circuit breaker still apply) or the deadline passes. Whatever is left is sent later as usual.
+     *
+     * @param timeoutNanos how long the consumer may keep uploading
+     * @return number of this request (see awaitFlush)
+     */
+    public long requestFlush(long timeoutNanos) {
+        long request;
+        synchronized (flushLock) {
+            request = ++flushRequests;
+            flushDeadline = System.nanoTime() + timeoutNanos;
+        }
+        flushPending = true;
+        wakeUp();
+        return request;
+    }
+
+    /**
+     * Waits until the flush request completes
+     *
+     * @param request number of the flush request
+     * @param timeoutNanos maximum time to wait
+     * @return number of events left unsent, -1 if flush didn't complete in time
+     * @throws InterruptedException Exception when waiting thread is interrupted
+     */
+    public long awaitFlush(long request, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        synchronized (flushLock) {
+            while (flushesCompleted < request) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return -1;
+                }
+                TimeUnit.NANOSECONDS.timedWait(flushLock, left);
+            }
+            return flushRemaining;
+        }
+    }
+
+    /**
+     * Number of events left unsent (in the journals) when the consumer stopped. They are sent on next start
+     *
+     * @return number of events, -1 if consumer is still running or the number is unknown
+     */
+    public long getUnsentOnExit() {
+        return unsentOnExit;
+    }
+
+    @Override
+    public void run() {
+        consumer = Thread.currentThread();
+        List<M6Task> drained = new ArrayList<>(MAX_DRAIN);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (journal == null) {
+                    // stored state is loaded here, off the thread which initialized the SDK
+                    config.load();
+                    openJournal();
+                }
+                if (flushPending) {
+                    flush(drained);
+                    continue;
+                }
+                metrics.queueDepth = queued();
+                drainAndPersist(drained);
+                long now = System.nanoTime();
+                if (criticalUploader.isFlushDue(now)) {
+                    criticalUploader.upload(now, null);
+                    onUploaded();
+                } else if (uploader.isFlushDue(now)) {
+                    // server is tried again, critical events waiting for their retry go first
+                    if (criticalUploader.hasPending()) {
+                        criticalUploader.upload(now, null);
+                    }
+                    uploader.upload(now, criticalQueue);
+                    onUploaded();
+                } else if (queued() == 0) {
+                    awaitWork(Math.min(criticalUploader.nanosUntilFlush(now), uploader.nanosUntilFlush(now)));
+                }
+            } catch (Exception e) {
+                M6Log.e("SixtMass", e.getMessage(), e);
+                awaitWork(ERROR_DELAY_NANOS);
+            } finally {
+                drained.clear();
+            }
+        }
+        if (journal != null) {
+            try {
+                // tasks published until now are journaled and sent on next start
+                while (drainAndPersist(drained) > 0) {
+                    drained.clear();
+                }
+                unsentOnExit = queued() + journal.pendingRecords() + criticalJournal.pendingRecords();
+            } catch (Exception e) {
+                M6Log.e("SixtMass", e.getMessage(), e);
+            }
+            journal.close();
+        }
+        if (criticalJournal != null) {
+            criticalJournal.close();
+        }
+        consumer = null;
+    }
+
+    /**
+     * Number of tasks waiting in the ring buffers
+     */
+    private int queued() {
+        return queue.size() + criticalQueue.size() + preInitQueue.size();
+    }
+
+    /**
+     * Drains the ring buffers once and persists drained tasks
+     *
+     * @param drained empty list for drained tasks
+     * @return number of drained tasks
+     * @throws IOException Exception writing the journal
+     */
+    private int drainAndPersist(List<M6Task> drained) throws IOException {
+        int sources = 0;
+        if (preInitQueue.drainTo(drained, MAX_DRAIN) > 0) {
+            sources++;
+        }
+        if (criticalQueue.drainTo(drained, MAX_DRAIN) > 0) {
+            sources++;
+        }
+        if (queue.drainTo(drained, MAX_DRAIN) > 0) {
+            sources++;
+        }
+        if (sources > 1) {
+            // keeps previous event linking in the order events happened
+            Collections.sort(drained, IN_ORDER);
+        }
+        if (!drained.isEmpty()) {
+            persist(drained);
+        }
+        return drained.size();
+    }
+
+    /**
+     * Serves flush request: persists everything published so far and sends both journals until they are empty,
+     * upload fails or the deadline passes
+     *
+     * @param drained empty list for drained tasks
+     * @throws IOException Exception reading or writing the journal
+     */
+    private void flush(List<M6Task> drained) throws IOException {
+        long request;
+        long deadline;
+        synchronized (flushLock) {
+            request = flushRequests;
+            deadline = flushDeadline;
+            flushPending = false;
+        }
+        long remaining = -1;
+        try {
+            boolean sent = true;
+            do {
+                while (drainAndPersist(drained) > 0) {
+                    drained.clear();
+                }
+                criticalUploader.requestFlush();
+                uploader.requestFlush();
+                long now = System.nanoTime();
+                if (criticalUploader.isFlushDue(now)) {
+                    sent = criticalUploader.upload(now, null, deadline);
+                }
+                if (sent && uploader.isFlushDue(now)) {
+                    sent = uploader.upload(now, criticalQueue, deadline);
+                }
+                onUploaded();
+                // tasks published in the meantime (e.g. critical ones preempting the upload) go in another round
+            } while (sent && System.nanoTime() - deadline < 0 && queued() > 0);
+            remaining = queued() + journal.pendingRecords() + criticalJournal.pendingRecords();
+        } finally {
+            synchronized (flushLock) {
+                flushesCompleted = request;
+                flushRemaining = remaining;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Parks consumer thread until a producer publishes new task, flush is requested or the timeout elapses
+     *
+     * Waiting flag is raised before re-checking the ring buffer so a producer publishing in between will always see it
+     *
+     * @param timeoutNanos maximum time to wait (Long.MAX_VALUE waits for new task only)
+     */
+    private void awaitWork(long timeoutNanos) {
+        waiting = true;
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (queued() == 0 && !flushPending && !Thread.currentThread().isInterrupted()) {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, left);
+                }
+            }
+        } finally {
+            waiting = false;
+        }
+    }
+
+    /**
+     * Opens the event journals and moves not yet sent tasks from legacy Shared Preferences task list into them
+     *
+     * @throws IOException Exception opening the journal
+     */
+    private void openJournal() throws IOException {
+        M6Storage storage = config.getStorage();
+        M6StateStore state = config.getStateStore();
+        criticalJournal = new M6Journal(new File(storage.getFilesDir(), M6Util.CRITICAL_JOURNAL_DIRECTORY), state,
+                M6StateStore.CRITICAL_JOURNAL);
+        journal = new M6Journal(new File(storage.getFilesDir(), M6Util.JOURNAL_DIRECTORY), state,
+                M6StateStore.EVENT_JOURNAL);
+        chain = M6ChainCursor.read(state, storage);
+
+        List<M6Task> legacy = M6Util.readTaskList(storage);
+        if (legacy != null) {
+            for (M6Task task : legacy) {
+                if (!task.sent) {
+                    journalOf(task).append(codec.getBuffer(), codec.encode(task), timestampOf(task), task.eventName);
+                }
+                chain.advance(task);
+            }
+            criticalJournal.flush();
+            journal.flush();
+            chain.save(state);
+        }
+        M6Util.clearTaskList(storage);
+
+        criticalUploader = new M6BatchUploader(criticalJournal, codec, config);
+        uploader = new M6BatchUploader(journal, codec, config);
+        evictor = new M6Evictor(journal, codec, config);
+        // backlog left from previous run may be over the quota already
+        evictor.enforce(config.getClock().currentTimeMillis());
+        // events left in the journals from previous run
+        criticalUploader.requestFlush();
+        uploader.requestFlush();
+    }
+
+    /**
+     * Persists drained tasks to the journal
+     *
+     * Appending and linking to previous event are O(1) per task. Tasks are sent later by the uploader once
+     * flush policy says so
+     *
+     * @param drained tasks drained from ring buffer
+     * @throws IOException Exception writing the journal
+     */
+    private void persist(List<M6Task> drained) throws IOException {
+        long now = System.nanoTime();
+        try {
+            persistTasks(drained, now);
+        } finally {
+            metrics.persistLatency.record(System.nanoTime() - now);
+            metrics.journalBytes = journal.pendingBytes() + criticalJournal.pendingBytes();
+        }
+    }
+
+    private void persistTasks(List<M6Task> drained, long now) throws IOException {
+        boolean critical = false;
+        for (M6Task task : drained) {
+            task.enrich(config);
+            // augment each next event with previous one (new chain if launch task encountered)
+            chain.link(task);
+            int length = codec.encode(task);
+            if (M6Util.isCritical(task.eventName)) {
+                criticalJournal.append(codec.getBuffer(), length, timestampOf(task), task.eventName);
+                critical = true;
+            } else {
+                journal.append(codec.getBuffer(), length, timestampOf(task), task.eventName);
+                uploader.onAppended(length, now);
+            }
+        }
+        if (critical) {
+            criticalJournal.flush();
+            // critical events don't wait for the flush policy
+            criticalUploader.requestFlush();
+        }
+        journal.flush();
+        chain.save(config.getStateStore());
+        evictor.enforce(config.getClock().currentTimeMillis());
+    }
+
+    /**
+     * Updates journal size and passes metrics to the listener after upload attempt
+     */
+    private void onUploaded() {
+        metrics.journalBytes = journal.pendingBytes() + criticalJournal.pendingBytes();
+        metrics.notifyListener();
+    }
+
+    private M6Journal journalOf(M6Task task) {
+        return M6Util.isCritical(task.eventName) ? criticalJournal : journal;
+    }
+
+    private long timestampOf(M6Task task) {
+        return task.timestamp != null ? task.timestamp : config.getClock().currentTimeMillis();
+    }
+}
@@ -0,0 +1,433 @@
+package com.sixthmass.sdk.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/*
+  Created by Igor Rendulic on 4/24/17.
+
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+
+/**
+ * Utility class for SixthMass
+ *
+ * Contains various utility methods
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class M6Util {
+
+    /**
+     * Shared Preferences Storage name (namespace, used by Android binding)
+     */
+    public static final String SHARED_PREFERENCES_NAME = "android.sixthmass.com";
+
+    /**
+     * Shared Preferences key for storing sent and unsent tasks (legacy, replaced by event journal)
+     */
+    public static final String SHARED_PREFERENCES_TASK_KEY = "sixthmass_tasks_key";
+
+    /**
+     * Name of the event journal directory (inside application files directory)
+     */
+    public static final String JOURNAL_DIRECTORY = "sixthmass_journal";
+
+    /**
+     * Name of the critical event journal directory (purchases and registrations, exempt from storage quota)
+     */
+    public static final String CRITICAL_JOURNAL_DIRECTORY = "sixthmass_journal_critical";
+
+    /**
+     * Name of the profile update journal directory (inside application files directory)
+     */
+    public static final String PROFILE_JOURNAL_DIRECTORY = "sixthmass_profile_journal";
+
+    /**
+     * Shared Preferences key for storing user id (earlier versions, user id is in M6StateStore now)
+     */
+    public static final String SHARED_PREFERENCES_USER_ID = "sixthmass_userid_key";
+
+    /**
+     * Shared Preferences key prefix for hashes of acknowledged profile fields
+     */
+    public static final String SHARED_PREFERENCES_PROFILE_HASH = "sixthmass_profile_hash_";
+
+    /**
+     * Shared Preferences key for name of the last event (earlier versions, moved to M6StateStore on first start)
+     */
+    public static final String SHARED_PREFERENCES_PREVIOUS_EVENT = "sixthmass_previous_event";
+
+    /**
+     * Shared Preferences key for time of the last event (earlier versions, moved to M6StateStore on first start)
+     */
+    public static final String SHARED_PREFERENCES_PREVIOUS_TIMESTAMP = "sixthmass_previous_timestamp";
+    public static final String ENDPOINT_SINGLE_EVENT = "http://10.0.2.2:8079/v1/event"; //
+    public static final String ENDPOINT_BULK_EVENTS = "http://10.0.2.2:8079/v1/events"; //
+    public static final String ENDPOINT_PROFILE = "http://10.0.2.2:8079/v1/profile"; //
+    public static final String ENDPOINT_BATCH = "http://10.0.2.2:8079/v1/batch"; //
+
+//    /**
+//     * Url for where to send events to
+//     */
+//    public static final String ENDPOINT_SINGLE_EVENT = "http://events.sixthmass.com/v1/event";
+//
+//    /**
+//     * Url for where to send batch of events to (JSON array of events)
+//     */
+//    public static final String ENDPOINT_BULK_EVENTS = "http://events.sixthmass.com/v1/events";
+//
+//    /**
+//     * Url for where to send user profile to
+//     */
+//    public static final String ENDPOINT_PROFILE = "http://events.sixthmass.com/v1/profile";
+//
+//    /**
+//     * Url for where to send batch envelope to (shared header and compact events)
+//     */
+//    public static final String ENDPOINT_BATCH = "http://events.sixthmass.com/v1/batch";
+
+    /**
+     * Default event name for profile update
+     */
+    public static final String EVENT_NAME_PROFILE = "zr_profile_update";
+
+    /**
+     * Default event name for new user registration event
+     */
+    public static final String EVENT_NAME_REGISTER = "zr_register";
+
+    /**
+     * Default event name for purchasing action
+     */
+    public static final String EVENT_NAME_PURCHASE = "zr_purchase";
+
+    /**
+     * Default event name for application launch
+     */
+    public static final String EVENT_NAME_LAUNCH = "zr_launch";
+
+    /**
+     * Critical events (purchase, registration) have their own queue and journal, are sent before all other events
+     * and are never dropped by storage quota
+     *
+     * @param eventName name of the event
+     * @return true if event is critical
+     */
+    public static boolean isCritical(String eventName) {
+        return EVENT_NAME_PURCHASE.equals(eventName) || EVENT_NAME_REGISTER.equals(eventName);
+    }
+
+    /**
+     * Method for serializing list of tasks and encoding them to base64
+     *
+     * Prepares list of tasks to be stored in Shared Preferences. This is legacy format, events are stored in
+     * the journal with M6TaskCodec
+     *
+     * @param list list of tasks/events
+     * @return serialized input list string
+     * @throws IOException Exception with serialization
+     */
+    public static String serialize(final List<M6Task> list) throws IOException {
+
+        ByteArrayOutputStream serialObj = new ByteArrayOutputStream();
+        ObjectOutputStream objStream = new ObjectOutputStream(serialObj);
+
+        try {
+
+            objStream.writeObject(list);
+            objStream.flush();
+            return M6Util.encodeBytes(serialObj.toByteArray());
+
+        } finally {
+            objStream.close();
+            serialObj.close();
+        }
+    }
+
+    /**
+     * Deserializing from serialized list ob tasks
+     *
+     * Used from retrieved object from Shared Preferences. Tasks stored by older SDK versions (with device
+     * and session values in every task) are converted to tasks sharing the contexts
+     *
+     * @param taskListString serialized list of tasks
+     * @return List of M6Task objects
+     */
+    public static List<M6Task> deserialize(String taskListString) {
+        if (taskListString == null || taskListString.length() == 0) return null;
+        try {
+            ByteArrayInputStream serialObj = new ByteArrayInputStream(M6Util.decodeBytes(taskListString));
+            ObjectInputStream objStream = new M6LegacyTask.LegacyObjectInputStream(serialObj);
+            List<?> stored = (List<?>) objStream.readObject();
+            List<M6Task> list = Collections.synchronizedList(new ArrayList<M6Task>(stored.size()));
+            M6Task previous = null;
+            for (Object task : stored) {
+                previous = task instanceof M6LegacyTask ? ((M6LegacyTask) task).toTask(previous) : (M6Task) task;
+                list.add(previous);
+            }
+            return list;
+        } catch (Exception e) {
+            M6Log.e("SixthMass", "Can't read stored task list", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reading hashes of profile fields acknowledged by the server
+     *
+     * @param prefReader SDK storage (Shared Preferences on Android)
+     * @return field name to hash map
+     */
+    static Map<String,Long> readProfileHashes(M6Storage prefReader) {
+        Map<String,Long> hashes = new HashMap<>();
+        for (Map.Entry<String,?> entry : prefReader.getAll().entrySet()) {
+            if (entry.getKey().startsWith(SHARED_PREFERENCES_PROFILE_HASH) && entry.getValue() instanceof Long) {
+                hashes.put(entry.getKey().substring(SHARED_PREFERENCES_PROFILE_HASH.length()), (Long) entry.getValue());
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Storing hashes of profile fields acknowledged by the server
+     *
+     * @param prefWriter SDK storage (Shared Preferences on Android)
+     * @param hashes acknowledged field hashes
+     * @param clear true to remove all previously stored hashes first (e.g. user changed)
+     */
+    static void saveProfileHashes(M6Storage prefWriter, Map<String,Long> hashes, boolean clear) {
+        M6Storage.Editor editor = prefWriter.edit();
+        if (clear) {
+            for (String key : prefWriter.getAll().keySet()) {
+                if (key.startsWith(SHARED_PREFERENCES_PROFILE_HASH)) {
+                    editor.remove(key);
+                }
+            }
+        }
+        for (Map.Entry<String,Long> entry : hashes.entrySet()) {
+            editor.putLong(SHARED_PREFERENCES_PROFILE_HASH + entry.getKey(), entry.getValue());
+        }
+        editor.commit();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the string
+     *
+     * @param value string (may be null)
+     * @return hash (0 for null)
+     */
+    static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Null safe equality check
+     *
+     * @param a first object
+     * @param b second object
+     * @return true if both are null or equal
+     */
+    static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Writing file content atomically (write to temporary file first and then rename)
+     *
+     * @param file target file
+     * @param data file content
+     * @throws IOException Exception writing or renaming the file
+     */
+    static void writeAtomically(File file, byte[] data) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Can't rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Base64 Encode of byte representation
+     *
+     * @param bytes input bytes
+     * @return string
+     */
+    public static String encodeBytes(byte[] bytes) {
+        StringBuffer strBuf = new StringBuffer();
+
+        for (int i = 0; i < bytes.length; i++) {
+            strBuf.append((char) (((bytes[i] >> 4) & 0xF) + ((int) 'a')));
+            strBuf.append((char) (((bytes[i]) & 0xF) + ((int) 'a')));
+        }
+
+        return strBuf.toString();
+    }
+
+    /**
+     * Decoding base64 from string to byte
+     * @param str Encoded string
+     * @return byte object
+     */
+    public static byte[] decodeBytes(String str) {
+        byte[] bytes = new byte[str.length() / 2];
+        for (int i = 0; i < str.length(); i+=2) {
+            char c = str.charAt(i);
+            bytes[i/2] = (byte) ((c - 'a') << 4);
+            c = str.charAt(i+1);
+            bytes[i/2] += (c - 'a');
+        }
+        return bytes;
+    }
+
+    /**
+     * Validation in case user created new SixthMassUserProfile and has no userId or clientId setup
+     *
+     * Reads the state store (may wait for stored state), called on the profile writer thread (M6ProfileEmitter)
+     *
+     * @param profile user profile
+     * @param config sdk configuration
+     * @return user profile
+     */
+    public static synchronized SixthMassUserProfile augmentProfile(SixthMassUserProfile profile, M6Config config) {
+
+        if (profile.getUserId() == null) {
+            String userId = config.getStateStore().getUserId();
+            if (userId == null) {
+                profile.setUserId(UUID.randomUUID().toString());
+            }
+            if (profile.getClientId() == null) {
+                profile.setClientId(config.getToken());
+            }
+        }
+        return profile;
+    }
+
+
+    /**
+     * Generating user profile with previously stored userId
+     * or with new userId stored in the state store (user never seen before)
+     *
+     * Reads storage and device id, called only once when M6Config loads its state (off the main thread)
+     *
+     * @param config SDK configuration
+     * @return SixthMassUserProfile
+     */
+    static synchronized SixthMassUserProfile getUserProfile(M6Config config) {
+
+        M6StateStore state = config.getStateStore();
+        SixthMassUserProfile profile = new SixthMassUserProfile();
+
+        String userId = state.getUserId();
+        if (userId == null) {
+            // stored in Shared Preferences by earlier versions
+            userId = config.getStorage().getString(M6Util.SHARED_PREFERENCES_USER_ID, null);
+            // if user == null then user was never seen before
+            if (userId == null) {
+                userId = UUID.randomUUID().toString();
+            }
+            state.setUserId(userId);
+        }
+        profile.setUserId(userId);
+        profile.setClientId(config.getToken());
+        profile.setDeviceUUID(config.getDeviceInfo().getDeviceId());
+        profile.setTzOffset(TimeZone.getDefault().getOffset(new Date().getTime()) / 1000 / 60);
+
+        return profile;
+    }
+
+    /**
+     * Reading the task list from Shared Preferences
+     *
+     * TaskList is serialized and encoded with Base64 then stored
+     * This is legacy storage. It's only read once to move remaining tasks into the event journal
+     *
+     * @param prefReader SDK storage (Shared Preferences on Android)
+     * @return list of tasks
+     */
+    static List<M6Task> readTaskList(M6Storage prefReader) {
+        List<M6Task> list = null;
+        String taskListString = prefReader.getString(M6Util.SHARED_PREFERENCES_TASK_KEY, null);
+        try {
+            if (taskListString != null) {
+                list = M6Util.deserialize(taskListString);
+            }
+        } catch (Exception e){
+            M6Log.e("SixtMass retrieve: ", e.getMessage(), e);
+            list = Collections.synchronizedList(new ArrayList<M6Task>());
+        }
+        return list;
+    }
+
+    /**
+     * Removing task list from Shared Preferences once it was moved to the event journal
+     *
+     * @param prefWriter SDK storage (Shared Preferences on Android)
+     */
+    static void clearTaskList(M6Storage prefWriter) {
+        if (prefWriter.contains(M6Util.SHARED_PREFERENCES_TASK_KEY)) {
+            prefWriter.edit().remove(M6Util.SHARED_PREFERENCES_TASK_KEY).commit();
+        }
+    }
+
+    /**
+     * Augmenting the event task with purchase items
+     *
+     * @param task task
+     * @param items list of purchased items
+     * @return M6Task
+     */
+    public static M6Task augmentWithPurchase(M6Task task, List<SixthMassItem> items) {
+
+        if (items != null) {
+            for (SixthMassItem item : items) {
+                M6Item m6item = new M6Item(item);
+                task.addPurchasedItem(m6item);
+            }
+        }
+
+        return task;
+    }
+}
@@ -0,0 +1,420 @@
+package com.sixthmass.sdk.util;
+/*
+  Created by Igor Rendulic on 4/26/17.
+  
+  Copyright 2017 
+  
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+    
+ */
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * User profile
+ *
+ * Currently it can not be retrieved from server.
+ *
+ * <p>
+ *     Only the populated fields will be updated in the analytics.
+ *     E.g. if in one session name is set and in another the name is not set it will not be lost after seconds update
+ *     This enables users to set the values one by one and none of them will be lost.
+ *     In case when the property is modified the latest pushed modified version of that property will be stored in the analytics
+ * </p>
+ *
+ * @author Igor Rendulic
+ * @version 2017.0504
+ * @since 0.0.1
+ */
+public final class SixthMassUserProfile {
+    /**
+     * Custom userId
+     */
+    private String remoteUserId;
+
+    /**
+     * Email
+     */
+    private String email;
+
+    /**
+     * First name
+     */
+    private String firstName;
+
+    /**
+     * Last name
+     */
+    private String lastName;
+
+    /**
+     * Gender (custom value)
+     */
+    private String gender;
+
+    /**
+     * Name fo the business, e.g. Business inc.
+     */
+    private String businessName;
+
+    /**
+     * Date of the birthday
+     */
+    private Date birthday;
+
+    /**
+     * Custom values to be stored with user profile
+     */
+    private Map<String,String> customValues;
+
+    /**
+     * ClientId or Token defined by SixthMass analytics
+     *
+     * This property is defined on SDK init
+     */
+    private String clientId;
+
+    /**
+     * Internal UserId of the user
+     *
+     * This property is defined on SDK init
+     */
+    private String userId;
+
+    /**
+     * Internet property
+     *
+     * Latest timezone offset in hours
+     */
+    private Integer tzOffset;
+
+    /**
+     * Internal property: Android push token
+     */
+    private String androidPushToken;
+
+    /**
+     * Internal property: deviceUUID (for iOs)
+     */
+    private String deviceUUID;
+
+    /**
+     * Internal property set when business name not null
+     */
+    private Boolean isBusiness;
+
+    public String getRemoteUserId() {
+        return remoteUserId;
+    }
+
+    public void setRemoteUserId(String remoteUserId) {
+        this.remoteUserId = remoteUserId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public void setGender(String gender) {
+        this.gender = gender;
+    }
+
+    public String getBusinessName() {
+        return businessName;
+    }
+
+    public void setBusinessName(String businessName) {
+        if (businessName != null) {
+            this.isBusiness = true;
+        } else {
+            this.isBusiness = false;
+        }
+        this.businessName = businessName;
+    }
+
+    public Date getBirthday() {
+        return birthday;
+    }
+
+    public void setBirthday(Date birthday) {
+        this.birthday = birthday;
+    }
+
+    public Map<String, String> getCustomValues() {
+        return customValues;
+    }
+
+    public void setCustomValues(Map<String, String> customValues) {
+        this.customValues = customValues;
+    }
+
+    /**
+     * Protected section
+     */
+    protected SixthMassUserProfile() {
+    }
+
+    // protected setters
+    protected void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    protected String getUserId() {
+        return this.userId;
+    }
+
+    protected  void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    protected String getClientId() {
+        return this.clientId;
+    }
+
+    protected void setTzOffset(Integer offset) {
+        this.tzOffset = offset;
+    }
+
+    protected void setAndroidPushToken(String pushToken) {
+        this.androidPushToken = pushToken;
+    }
+
+    protected void setDeviceUUID(String deviceUUID) {
+        this.deviceUUID = deviceUUID;
+    }
+
+    protected void setIsBusiness(boolean isBusiness) {
+        this.isBusiness = isBusiness;
+    }
+
+    Integer getTzOffset() {
+        return this.tzOffset;
+    }
+
+    String getAndroidPushToken() {
+        return this.androidPushToken;
+    }
+
+    String getDeviceUUID() {
+        return this.deviceUUID;
+    }
+
+    Boolean getIsBusiness() {
+        return this.isBusiness;
+    }
+
+    /**
+     * Copy of current values. Taken on the caller thread so later changes of this object don't leak into
+     * pending update
+     *
+     * @return copy of this profile
+     */
+    SixthMassUserProfile snapshot() {
+        SixthMassUserProfile copy = new SixthMassUserProfile();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Merges newer update into this profile. Non-null values of the update win (last write wins),
+     * custom values are merged per key
+     *
+     * @param update newer profile update
+     */
+    void merge(SixthMassUserProfile update) {
+        if (update.remoteUserId != null) this.remoteUserId = update.remoteUserId;
+        if (update.email != null) this.email = update.email;
+        if (update.firstName != null) this.firstName = update.firstName;
+        if (update.lastName != null) this.lastName = update.lastName;
+        if (update.gender != null) this.gender = update.gender;
+        if (update.businessName != null) this.businessName = update.businessName;
+        if (update.birthday != null) this.birthday = new Date(update.birthday.getTime());
+        if (update.clientId != null) this.clientId = update.clientId;
+        if (update.userId != null) this.userId = update.userId;
+        if (update.tzOffset != null) this.tzOffset = update.tzOffset;
+        if (update.androidPushToken != null) this.androidPushToken = update.androidPushToken;
+        if (update.deviceUUID != null) this.deviceUUID = update.deviceUUID;
+        if (update.isBusiness != null) this.isBusiness = update.isBusiness;
+        mergeCustomValues(update.customValues);
+    }
+
+    /**
+     * Profile with only the fields which changed since the acknowledged state (ids are always included)
+     *
+     * @param acked hashes of acknowledged field values (field name, custom values as "customValues.key")
+     * @param hashes receives hashes of all fields in the returned profile
+     * @return profile with changed fields
+     */
+    SixthMassUserProfile changedSince(Map<String,Long> acked, Map<String,Long> hashes) {
+        SixthMassUserProfile changes = new SixthMassUserProfile();
+        changes.clientId = this.clientId;
+        changes.userId = this.userId;
+        changed("userId", this.userId, acked, hashes);
+        if (changed("remoteUserId", this.remoteUserId, acked, hashes)) changes.remoteUserId = this.remoteUserId;
+        if (changed("email", this.email, acked, hashes)) changes.email = this.email;
+        if (changed("firstName", this.firstName, acked, hashes)) changes.firstName = this.firstName;
+        if (changed("lastName", this.lastName, acked, hashes)) changes.lastName = this.lastName;
+        if (changed("gender", this.gender, acked, hashes)) changes.gender = this.gender;
+        if (changed("businessName", this.businessName, acked, hashes)) changes.businessName = this.businessName;
+        if (changed("birthday", this.birthday == null ? null : this.birthday.getTime(), acked, hashes)) changes.birthday = this.birthday;
+        if (changed("tzOffset", this.tzOffset, acked, hashes)) changes.tzOffset = this.tzOffset;
+        if (changed("androidPushToken", this.androidPushToken, acked, hashes)) changes.androidPushToken = this.androidPushToken;
+        if (changed("deviceUUID", this.deviceUUID, acked, hashes)) changes.deviceUUID = this.deviceUUID;
+        if (changed("isBusiness", this.isBusiness, acked, hashes)) changes.isBusiness = this.isBusiness;
+        if (this.customValues != null) {
+            for (Map.Entry<String,String> entry : this.customValues.entrySet()) {
+                if (changed("customValues." + entry.getKey(), entry.getValue(), acked, hashes)) {
+                    if (changes.customValues == null) {
+                        changes.customValues = new LinkedHashMap<>();
+                    }
+                    changes.customValues.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Checks if profile has any values besides ids
+     *
+     * @return true if there is nothing to update
+     */
+    boolean hasNoValues() {
+        return remoteUserId == null && email == null && firstName == null && lastName == null && gender == null
+                && businessName == null && birthday == null && tzOffset == null && androidPushToken == null
+                && deviceUUID == null && isBusiness == null && (customValues == null || customValues.isEmpty());
+    }
+
+    /**
+     * Compares hash of the value with acknowledged hash. Null values are not updated so never changed
+     */
+    private static boolean changed(String name, Object value, Map<String,Long> acked, Map<String,Long> hashes) {
+        if (value == null && !name.startsWith("customValues.")) {
+            return false;
+        }
+        long hash = M6Util.hash(value == null ? null : String.valueOf(value));
+        Long previous = acked.get(name);
+        if (previous != null && previous == hash) {
+            return false;
+        }
+        hashes.put(name, hash);
+        return true;
+    }
+
+    /**
+     * Merges custom values per key (values of the update win)
+     *
+     * @param values newer custom values
+     */
+    void mergeCustomValues(Map<String,String> values) {
+        if (values == null) {
+            return;
+        }
+        if (this.customValues == null) {
+            this.customValues = new LinkedHashMap<>();
+        }
+        this.customValues.putAll(values);
+    }
+
+    /**
+     * Convert object to required JSON format
+     *
+     * @return json object
+     * @throws JSONException Exception when conversion failed
+     */
+    protected JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("clientId", this.clientId);
+        json.put("userId", this.userId);
+        json.put("remoteUserId", this.remoteUserId);
+        json.put("email", this.email);
+        json.put("firstName", this.firstName);
+        json.put("lastName", this.lastName);
+        json.put("tzOffset", this.tzOffset);
+        json.put("androidPushToken", this.androidPushToken);
+        json.put("deviceUUID", this.deviceUUID);
+        json.put("gender", this.gender);
+        json.put("isBusiness", this.isBusiness);
+        json.put("businessName", this.businessName);
+
+        if (this.birthday != null) {
+            DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+            json.put("birthday", df.format(this.birthday));
+        }
+
+        if (this.customValues != null) {
+            JSONObject customProperties = new JSONObject(this.customValues);
+            json.put("customValues", customProperties);
+        }
+
+        return json;
+    }
+
+    /**
+     * Writes the same json as toJson straight to the writer
+     *
+     * @param writer json writer
+     * @throws JSONException Exception when conversion failed
+     */
+    void writeJson(M6JsonWriter writer) throws JSONException {
+        writer.beginObject()
+                .field("clientId", this.clientId)
+                .field("userId", this.userId)
+                .field("remoteUserId", this.remoteUserId)
+                .field("email", this.email)
+                .field("firstName", this.firstName)
+                .field("lastName", this.lastName)
+                .field("tzOffset", this.tzOffset)
+                .field("androidPushToken", this.androidPushToken)
+                .field("deviceUUID", this.deviceUUID)
+                .field("gender", this.gender)
+                .field("isBusiness", this.isBusiness)
+                .field("businessName", this.businessName);
+        if (this.birthday != null) {
+            DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+            writer.field("birthday", df.format(this.birthday));
+        }
+        writer.field("customValues", this.customValues)
+                .endObject();
+    }
+}
@@ -0,0 +1,173 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Storage quota enforced on the event journal: low-water target and eviction by per-segment event counts
+ */
+public class M6EvictorTest {
+
+    private static final long MAX_BYTES = M6StorageQuota.MIN_BYTES * 4;
+
+    private static final long LOW_WATER = MAX_BYTES / 100 * M6Evictor.LOW_WATER_PERCENT;
+
+    /**
+     * Fails the test if the journal reads a segment to count its records
+     */
+    private static final M6Journal.RecordKeys NOT_READ = new M6Journal.RecordKeys() {
+        @Override
+        public String keyOf(byte[] record, int length) {
+            throw new AssertionError("segment read although its event counts are known");
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    private M6Config config;
+
+    private M6StateStore state;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        config = M6Config.instance(new M6JvmPlatform(folder.newFolder("sdk")), "token");
+        state = M6StateStore.open(folder.getRoot());
+        directory = new File(folder.getRoot(), "journal");
+    }
+
+    @Test
+    public void dropsOldestDownToLowWater() throws IOException {
+        config.setStorageQuota(new M6StorageQuota(MAX_BYTES, TimeUnit.DAYS.toMillis(1), M6EvictionPolicy.DROP_OLDEST));
+        M6Journal journal = new M6Journal(directory, state, M6StateStore.EVENT_JOURNAL);
+        M6Evictor evictor = new M6Evictor(journal, codec, config);
+        long now = System.currentTimeMillis();
+        while (journal.pendingBytes() <= MAX_BYTES) {
+            append(journal, "view", now);
+        }
+
+        assertTrue(evictor.enforce(now) > 0);
+        assertTrue(journal.pendingBytes() <= LOW_WATER);
+
+        // growing again up to max bytes doesn't start another pass
+        while (journal.pendingBytes() + 1024 <= MAX_BYTES) {
+            append(journal, "view", now);
+        }
+        assertEquals(0, evictor.enforce(now));
+    }
+
+    @Test
+    public void dropsLowestPriorityByEventCounts() throws IOException {
+        Map<String,Integer> priorities = new HashMap<>();
+        priorities.put("view", 0);
+        priorities.put("click", 1);
+        config.setStorageQuota(new M6StorageQuota(MAX_BYTES, TimeUnit.DAYS.toMillis(1),
+                M6EvictionPolicy.dropLowestPriority(priorities, 2)));
+        M6Journal journal = new M6Journal(directory, state, M6StateStore.EVENT_JOURNAL);
+        M6Evictor evictor = new M6Evictor(journal, codec, config);
+        long now = System.currentTimeMillis();
+        int kept = 0;
+        for (int i = 0; journal.pendingBytes() <= MAX_BYTES; i++) {
+            String eventName = i % 4 == 0 ? "click" : "view";
+            append(journal, eventName, now);
+            kept += i % 4 == 0 ? 1 : 0;
+        }
+        journal.flush();
+        int segments = journal.segmentCount();
+
+        int dropped = evictor.enforce(now);
+
+        assertTrue(journal.pendingBytes() <= LOW_WATER);
+        // tail sealed once, no segment dropped whole while views are left to drop
+        assertEquals(segments + 1, journal.segmentCount());
+        int clicks = 0;
+        int views = 0;
+        for (int i = 0; i < journal.segmentCount() - 1; i++) {
+            Map<String,Integer> counts = journal.keyCounts(i, NOT_READ);
+            clicks += count(counts, "click");
+            views += count(counts, "view");
+        }
+        assertEquals(kept, clicks);
+        assertEquals(journal.pendingRecords(), clicks + views);
+        assertTrue(dropped > 0);
+    }
+
+    @Test
+    public void keepsEventCountsInIndex() throws IOException {
+        M6Journal journal = new M6Journal(directory, state, M6StateStore.EVENT_JOURNAL);
+        for (int i = 0; i < 10; i++) {
+            append(journal, i % 2 == 0 ? "view" : "click", 0);
+        }
+        // counted by reading the segment
+        journal.append(encode("purchase"), encode("purchase").length, 0);
+        journal.seal();
+        journal.close();
+
+        M6Journal reopened = new M6Journal(directory, state, M6StateStore.EVENT_JOURNAL);
+        M6Journal.RecordKeys names = new M6Journal.RecordKeys() {
+            @Override
+            public String keyOf(byte[] record, int length) {
+                return codec.decodeEventName(record, length);
+            }
+        };
+        assertEquals(5, count(reopened.keyCounts(0, names), "view"));
+        assertEquals(1, count(reopened.keyCounts(0, NOT_READ), "purchase"));
+        assertTrue(reopened.keyCounts(1, NOT_READ).isEmpty());
+
+        assertEquals(5, reopened.compact(0, names, Collections.singleton("view")));
+        assertFalse(reopened.keyCounts(0, NOT_READ).containsKey("view"));
+        assertEquals(5, count(reopened.keyCounts(0, NOT_READ), "click"));
+        assertEquals(6, reopened.pendingRecords());
+    }
+
+    private void append(M6Journal journal, String eventName, long timestamp) throws IOException {
+        byte[] record = encode(eventName);
+        journal.append(record, record.length, timestamp, eventName);
+    }
+
+    private byte[] encode(String eventName) {
+        Map<String,String> properties = new HashMap<>();
+        properties.put("screen", "product_details_of_a_fairly_long_product_name");
+        M6Task task = new M6Task(eventName, properties, 1494000000000L, null, null, null);
+        int length = codec.encode(task);
+        byte[] record = new byte[length];
+        System.arraycopy(codec.getBuffer(), 0, record, 0, length);
+        return record;
+    }
+
+    private static int count(Map<String,Integer> counts, String eventName) {
+        Integer count = counts.get(eventName);
+        return count != null ? count : 0;
+    }
+}
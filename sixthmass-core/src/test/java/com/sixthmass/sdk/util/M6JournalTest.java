@@ -0,0 +1,243 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Torn and corrupted records in framed ([length][CRC32C][payload]) and legacy ([length][payload]) journal segments
+ */
+public class M6JournalTest {
+
+    private static final int LEGACY_SEGMENT_MAGIC = 0x4D364A01;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private M6StateStore state;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        state = M6StateStore.open(folder.getRoot());
+        directory = new File(folder.getRoot(), "journal");
+    }
+
+    @Test
+    public void truncatesTornFinalRecordOfFramedSegment() throws IOException {
+        M6Journal journal = open();
+        append(journal, "first", "second", "third");
+        journal.flush();
+        // crash while the last record was written
+        File tail = segment(0);
+        truncate(tail, tail.length() - 3);
+
+        M6Journal reopened = open();
+
+        assertEquals(M6Journal.HEADER_SIZE + 2 * M6Journal.RECORD_HEADER_SIZE + 11, tail.length());
+        assertArrayEquals(bytes("first"), reopened.read());
+        assertArrayEquals(bytes("second"), reopened.read());
+        assertNull(reopened.read());
+        append(reopened, "fourth");
+        reopened.flush();
+        assertArrayEquals(bytes("fourth"), reopened.read());
+    }
+
+    @Test
+    public void skipsCorruptedFinalRecordOfFramedTail() throws IOException {
+        M6Journal journal = open();
+        append(journal, "first", "second", "third");
+        journal.flush();
+        // payload of "third" flipped on disk while the journal is open
+        corrupt(segment(0), M6Journal.HEADER_SIZE + 2 * M6Journal.RECORD_HEADER_SIZE + 11 + M6Journal.RECORD_HEADER_SIZE);
+
+        assertArrayEquals(bytes("first"), journal.read());
+        assertArrayEquals(bytes("second"), journal.read());
+        assertNull(journal.read());
+        assertEquals(1, journal.takeSkipped());
+
+        append(journal, "fourth");
+        journal.flush();
+        assertArrayEquals(bytes("fourth"), journal.read());
+
+        // counted once when read again
+        journal.rewind();
+        while (journal.read() != null) {
+            // reading everything again
+        }
+        assertEquals(0, journal.takeSkipped());
+    }
+
+    @Test
+    public void continuesInNewSegmentAfterCorruptedLengthInTail() throws IOException {
+        M6Journal journal = open();
+        append(journal, "first", "second");
+        journal.flush();
+        // length of "second" overwritten with garbage
+        overwriteInt(segment(0), M6Journal.HEADER_SIZE + M6Journal.RECORD_HEADER_SIZE + 5, -7);
+
+        assertArrayEquals(bytes("first"), journal.read());
+        assertNull(journal.read());
+        assertEquals(1, journal.takeSkipped());
+        assertEquals(2, journal.segmentCount());
+
+        append(journal, "third");
+        journal.flush();
+        assertArrayEquals(bytes("third"), journal.read());
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void readsSameRecordAgainAfterIoError() throws IOException {
+        M6Journal journal = open();
+        append(journal, "first", "second");
+        journal.flush();
+        File tail = segment(0);
+        File moved = new File(folder.getRoot(), "moved.seg");
+        assertArrayEquals(bytes("first"), journal.read());
+        journal.rewind();
+        // segment can't be opened for a while
+        assertTrue(tail.renameTo(moved));
+
+        try {
+            journal.read();
+            fail("read of a missing segment");
+        } catch (IOException e) {
+            // read again later
+        }
+
+        assertTrue(moved.renameTo(tail));
+        assertArrayEquals(bytes("first"), journal.read());
+        assertArrayEquals(bytes("second"), journal.read());
+        assertEquals(0, journal.takeSkipped());
+    }
+
+    @Test
+    public void truncatesTornFinalRecordOfLegacySegment() throws IOException {
+        writeLegacySegment(0, "first", "second", "third");
+        File legacy = segment(0);
+        truncate(legacy, legacy.length() - 2);
+
+        M6Journal journal = open();
+
+        assertEquals(4 + 9 + 10, legacy.length());
+        assertArrayEquals(bytes("first"), journal.read());
+        assertArrayEquals(bytes("second"), journal.read());
+        assertNull(journal.read());
+        assertEquals(0, journal.takeSkipped());
+    }
+
+    @Test
+    public void skipsRestOfLegacySegmentAfterCorruptedLength() throws IOException {
+        writeLegacySegment(0, "first", "second", "third");
+        writeLegacySegment(1, "fourth");
+        // length of "third" in the sealed legacy segment overwritten with garbage
+        overwriteInt(segment(0), 4 + 9 + 10, Integer.MAX_VALUE);
+
+        M6Journal journal = open();
+
+        assertArrayEquals(bytes("first"), journal.read());
+        assertArrayEquals(bytes("second"), journal.read());
+        assertArrayEquals(bytes("fourth"), journal.read());
+        assertNull(journal.read());
+        assertEquals(1, journal.takeSkipped());
+    }
+
+    private M6Journal open() throws IOException {
+        return new M6Journal(directory, state, M6StateStore.EVENT_JOURNAL);
+    }
+
+    private File segment(long id) {
+        return new File(directory, String.format(Locale.US, "%012d.seg", id));
+    }
+
+    private static void append(M6Journal journal, String... records) throws IOException {
+        for (String record : records) {
+            journal.append(bytes(record));
+        }
+    }
+
+    private void writeLegacySegment(long id, String... records) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(segment(id)));
+        try {
+            out.writeInt(LEGACY_SEGMENT_MAGIC);
+            for (String record : records) {
+                out.writeInt(bytes(record).length);
+                out.write(bytes(record));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void corrupt(File file, long offset) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.seek(offset);
+            int value = out.read();
+            out.seek(offset);
+            out.write(value ^ 0xFF);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void overwriteInt(File file, long offset, int value) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.seek(offset);
+            out.writeInt(value);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Migration of the task list stored in Shared Preferences by SDK 0.0.4
+ *
+ * task-list-0.0.4.txt was written by M6Util.serialize of 0.0.4: view_0 (sent), view_1 and purchase with one item,
+ * all in the same session.
+ */
+public class M6LegacyTaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTaskListOf004() throws IOException {
+        List<M6Task> tasks = M6Util.deserialize(fixture("task-list-0.0.4.txt"));
+
+        assertNotNull("task list of 0.0.4 can't be read", tasks);
+        assertEquals(3, tasks.size());
+
+        M6Task sent = tasks.get(0);
+        assertEquals("view_0", sent.eventName);
+        assertTrue(sent.sent);
+        assertEquals(Long.valueOf(1494000000000L), sent.timestamp);
+        assertEquals("screen_0", sent.getProperties().get("screen"));
+        assertEquals("user-1", sent.getSessionContext().getUserId());
+        assertEquals("token-1", sent.getDeviceContext().getClientId());
+
+        M6Task view = tasks.get(1);
+        assertFalse(view.sent);
+        assertEquals("view_0", view.previousEvent);
+        assertEquals(Long.valueOf(1494000000000L), view.previousTimestamp);
+        assertSame(sent.getDeviceContext(), view.getDeviceContext());
+        assertSame(sent.getSessionContext(), view.getSessionContext());
+
+        M6Task purchase = tasks.get(2);
+        assertEquals("purchase", purchase.eventName);
+        List<M6Item> items = purchase.getPurchasedItems();
+        assertEquals(1, items.size());
+        assertEquals("D-TOY", items.get(0).id);
+        assertEquals("D-JOY Tri-Spinner Fidget", items.get(0).n);
+        assertEquals(Double.valueOf(2.9), items.get(0).pr);
+        assertEquals(Integer.valueOf(2), items.get(0).q);
+    }
+
+    @Test
+    public void movesTaskListOf004FromStorage() throws IOException {
+        M6Storage storage = new M6JvmPlatform(folder.getRoot()).getStorage();
+        storage.edit().putString(M6Util.SHARED_PREFERENCES_TASK_KEY, fixture("task-list-0.0.4.txt")).commit();
+
+        List<M6Task> tasks = M6Util.readTaskList(storage);
+
+        assertNotNull(tasks);
+        assertEquals(3, tasks.size());
+        // purchase survives the journal codec
+        M6TaskCodec codec = new M6TaskCodec();
+        int length = codec.encode(tasks.get(2));
+        M6Task decoded = codec.decode(Arrays.copyOf(codec.getBuffer(), length));
+        assertEquals("D-TOY", decoded.getPurchasedItems().get(0).id);
+
+        M6Util.clearTaskList(storage);
+        assertFalse(storage.contains(M6Util.SHARED_PREFERENCES_TASK_KEY));
+    }
+
+    private static String fixture(String name) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                M6LegacyTaskTest.class.getResourceAsStream(name), "UTF-8"));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two-slot state file: round trip, corrupted and torn slots
+ */
+public class M6StateStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsStateAcrossOpen() throws IOException {
+        M6StateStore store = M6StateStore.open(folder.getRoot());
+        store.setUserId("user-\u017e");
+        store.setPreviousEvent("view_product", 1494000000000L);
+        store.setAckCursor(M6StateStore.CRITICAL_JOURNAL, 3, 1234);
+
+        M6StateStore reopened = M6StateStore.open(folder.getRoot());
+
+        assertEquals("user-\u017e", reopened.getUserId());
+        assertEquals("view_product", reopened.getPreviousEvent());
+        assertEquals(1494000000000L, reopened.getPreviousTimestamp());
+        assertFalse(reopened.hasAckCursor(M6StateStore.EVENT_JOURNAL));
+        assertTrue(reopened.hasAckCursor(M6StateStore.CRITICAL_JOURNAL));
+        assertEquals(3, reopened.getAckSegment(M6StateStore.CRITICAL_JOURNAL));
+        assertEquals(1234, reopened.getAckOffset(M6StateStore.CRITICAL_JOURNAL));
+    }
+
+    @Test
+    public void fallsBackToOtherSlotWhenLatestIsCorrupted() throws IOException {
+        M6StateStore store = M6StateStore.open(folder.getRoot());
+        // sequence 1 goes to slot 1, sequence 2 to slot 0
+        store.setUserId("first");
+        store.setUserId("second");
+        corrupt(0, 100);
+
+        M6StateStore reopened = M6StateStore.open(folder.getRoot());
+        assertEquals("first", reopened.getUserId());
+
+        // next save overwrites the corrupted slot, not the one it fell back to
+        reopened.setUserId("third");
+        assertEquals("third", M6StateStore.open(folder.getRoot()).getUserId());
+        corrupt(0, 200);
+        assertEquals("first", M6StateStore.open(folder.getRoot()).getUserId());
+    }
+
+    @Test
+    public void fallsBackToOtherSlotWhenLatestIsTorn() throws IOException {
+        M6StateStore store = M6StateStore.open(folder.getRoot());
+        store.setUserId("first");
+        store.setUserId("second");
+        store.setUserId("third");
+        // crash in the middle of writing slot 1
+        RandomAccessFile file = new RandomAccessFile(stateFile(), "rw");
+        try {
+            file.setLength(M6StateStore.SLOT_SIZE + 100);
+        } finally {
+            file.close();
+        }
+
+        assertEquals("second", M6StateStore.open(folder.getRoot()).getUserId());
+    }
+
+    @Test
+    public void startsEmptyWhenBothSlotsAreCorrupted() throws IOException {
+        M6StateStore store = M6StateStore.open(folder.getRoot());
+        store.setUserId("first");
+        store.setAckCursor(M6StateStore.EVENT_JOURNAL, 1, 4);
+        corrupt(0, M6StateStore.SLOT_SIZE - 1);
+        corrupt(1, 0);
+
+        M6StateStore reopened = M6StateStore.open(folder.getRoot());
+
+        assertNull(reopened.getUserId());
+        assertNull(reopened.getPreviousEvent());
+        assertFalse(reopened.hasAckCursor(M6StateStore.EVENT_JOURNAL));
+    }
+
+    @Test
+    public void dropsPreviousEventNameTooLongForSlot() {
+        M6StateStore store = M6StateStore.open(folder.getRoot());
+        StringBuilder name = new StringBuilder();
+        while (name.length() <= M6StateStore.MAX_PREVIOUS_EVENT) {
+            name.append("event_");
+        }
+        store.setPreviousEvent(name.toString(), 1);
+
+        M6StateStore reopened = M6StateStore.open(folder.getRoot());
+        assertNull(reopened.getPreviousEvent());
+        assertEquals(1, reopened.getPreviousTimestamp());
+    }
+
+    private File stateFile() {
+        return new File(folder.getRoot(), M6StateStore.FILE_NAME);
+    }
+
+    /**
+     * Flips one byte of the slot
+     */
+    private void corrupt(int slot, int offset) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(stateFile(), "rw");
+        try {
+            long position = slot * M6StateStore.SLOT_SIZE + offset;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+    }
+}
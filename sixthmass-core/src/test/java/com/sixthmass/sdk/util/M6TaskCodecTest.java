@@ -0,0 +1,255 @@
+package com.sixthmass.sdk.util;
+/*
+  Copyright 2017
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Round trip of journal records through M6TaskCodec, compared by the JSON sent to the server
+ */
+public class M6TaskCodecTest {
+
+    private static final int RANDOM_TASKS = 20000;
+
+    private static final int RANDOM_PROFILES = 2000;
+
+    private final M6TaskCodec codec = new M6TaskCodec();
+
+    @Test
+    public void roundTripsRandomTasks() throws JSONException {
+        Random random = new Random(20170504);
+        for (int i = 0; i < RANDOM_TASKS; i++) {
+            M6Task task = randomTask(random);
+            M6Task decoded = codec.decode(encode(task));
+            assertEquals("task " + i, json(task), json(decoded));
+            assertEquals(task.sent, decoded.sent);
+            assertEquals(task.getRefDomain(), decoded.getRefDomain());
+        }
+    }
+
+    @Test
+    public void sharesEqualContextsOfConsecutiveTasks() {
+        M6DeviceContext device = new M6DeviceContext("token", "android_0.0.5", "Europe/Ljubljana", 120, "Android",
+                "Google", "7.0", "Pixel", "English", 0);
+        M6SessionContext session = new M6SessionContext("user", "session", 1494000000000L);
+        M6Task first = new M6Task("first", null, 1494000001000L, device, session, 1.0);
+        M6Task second = new M6Task("second", null, 1494000002000L, device, session, 2.0);
+
+        M6Task firstDecoded = codec.decode(encode(first));
+        M6Task secondDecoded = codec.decode(encode(second));
+
+        assertSame(firstDecoded.getDeviceContext(), secondDecoded.getDeviceContext());
+        assertSame(firstDecoded.getSessionContext(), secondDecoded.getSessionContext());
+    }
+
+    @Test
+    public void decodesEventNameOnly() {
+        M6Task task = randomTask(new Random(1));
+        task.eventName = M6Util.EVENT_NAME_PURCHASE;
+        int length = codec.encode(task);
+        byte[] buffer = Arrays.copyOf(codec.getBuffer(), length + 16);
+
+        assertEquals(M6Util.EVENT_NAME_PURCHASE, codec.decodeEventName(buffer, length));
+    }
+
+    @Test
+    public void decodesJavaSerializedRecordOf004() throws IOException, JSONException {
+        byte[] record = M6Util.decodeBytes(fixture("journal-record-0.0.4.txt"));
+        assertEquals(0xAC, record[0] & 0xFF);
+        assertEquals(0xED, record[1] & 0xFF);
+
+        M6Task task = codec.decode(record);
+
+        assertEquals("purchase", task.eventName);
+        assertEquals("view_1", task.previousEvent);
+        assertEquals("user-1", task.getSessionContext().getUserId());
+        assertEquals("Pixel", task.getDeviceContext().getDevice());
+        assertEquals("D-TOY", task.getPurchasedItems().get(0).id);
+        assertEquals("purchase", codec.decodeEventName(record, record.length));
+        // and the same after moving it to the current format
+        assertEquals(json(task), json(codec.decode(encode(task))));
+    }
+
+    @Test
+    public void decodesJavaSerializedRecordOfCurrentTask() throws IOException, JSONException {
+        M6Task task = randomTask(new Random(2));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(task);
+        out.close();
+
+        assertEquals(json(task), json(codec.decode(bytes.toByteArray())));
+    }
+
+    @Test
+    public void rejectsUnknownVersionAndTruncatedRecord() {
+        byte[] record = encode(randomTask(new Random(3)));
+
+        byte[] unknown = record.clone();
+        unknown[0] = (byte) (M6TaskCodec.VERSION + 1);
+        assertNull(codec.decode(unknown));
+        assertNull(codec.decode(Arrays.copyOf(record, record.length / 2)));
+    }
+
+    @Test
+    public void roundTripsRandomProfiles() throws JSONException {
+        Random random = new Random(20170427);
+        for (int i = 0; i < RANDOM_PROFILES; i++) {
+            SixthMassUserProfile profile = randomProfile(random);
+            int length = codec.encodeProfile(profile);
+            SixthMassUserProfile decoded = codec.decodeProfile(Arrays.copyOf(codec.getBuffer(), length));
+            assertEquals("profile " + i, json(profile), json(decoded));
+        }
+    }
+
+    private byte[] encode(M6Task task) {
+        int length = codec.encode(task);
+        return Arrays.copyOf(codec.getBuffer(), length);
+    }
+
+    private static String json(M6Task task) throws JSONException {
+        M6JsonWriter writer = new M6JsonWriter(new StringBuilder());
+        task.writeJson(writer);
+        return writer.getBuffer().toString();
+    }
+
+    private static String json(SixthMassUserProfile profile) throws JSONException {
+        M6JsonWriter writer = new M6JsonWriter(new StringBuilder());
+        profile.writeJson(writer);
+        return writer.getBuffer().toString();
+    }
+
+    private static M6Task randomTask(Random random) {
+        M6DeviceContext device = new M6DeviceContext(string(random), string(random), string(random),
+                random.nextBoolean() ? random.nextInt(1680) - 840 : null, string(random), string(random),
+                string(random), string(random), string(random), 0);
+        M6SessionContext session = new M6SessionContext(string(random), string(random), random.nextLong());
+        Double duration = null;
+        switch (random.nextInt(3)) {
+            case 0:
+                duration = (double) random.nextInt(100000);
+                break;
+            case 1:
+                duration = random.nextDouble() * 1000;
+                break;
+        }
+        Long timestamp = random.nextInt(10) > 0 ? 1494000000000L + random.nextInt(Integer.MAX_VALUE) : null;
+        M6Task task = new M6Task(string(random), properties(random), timestamp, device, session, duration);
+        task.previousEvent = string(random);
+        if (random.nextBoolean()) {
+            task.previousTimestamp = timestamp != null ? timestamp - random.nextInt(100000) : random.nextLong();
+        }
+        task.setRefDomain(string(random));
+        task.sent = random.nextBoolean();
+        if (random.nextInt(5) == 0) {
+            List<M6Item> items = new ArrayList<>();
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                items.add(new M6Item(string(random), string(random),
+                        random.nextBoolean() ? random.nextInt(100000) / 100.0 : null,
+                        random.nextBoolean() ? random.nextInt(20) - 5 : null));
+            }
+            task.setPurchasedItems(items);
+        }
+        return task;
+    }
+
+    private static SixthMassUserProfile randomProfile(Random random) {
+        SixthMassUserProfile profile = new SixthMassUserProfile();
+        profile.setClientId(string(random));
+        profile.setUserId(string(random));
+        profile.setRemoteUserId(string(random));
+        profile.setEmail(string(random));
+        profile.setFirstName(string(random));
+        profile.setLastName(string(random));
+        profile.setGender(string(random));
+        if (random.nextBoolean()) {
+            profile.setBusinessName(string(random));
+        }
+        profile.setBirthday(random.nextBoolean() ? new Date(random.nextLong() / 1000) : null);
+        profile.setTzOffset(random.nextBoolean() ? random.nextInt(1680) - 840 : null);
+        profile.setAndroidPushToken(string(random));
+        profile.setDeviceUUID(string(random));
+        if (random.nextInt(4) == 0) {
+            profile.setIsBusiness(random.nextBoolean());
+        }
+        profile.setCustomValues(properties(random));
+        return profile;
+    }
+
+    private static Map<String,String> properties(Random random) {
+        if (random.nextInt(4) == 0) {
+            return null;
+        }
+        Map<String,String> properties = new LinkedHashMap<>();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            String key = string(random);
+            properties.put(key != null ? key : "key" + i, string(random));
+        }
+        return properties;
+    }
+
+    /**
+     * Null, ASCII, non-ASCII or arbitrary UTF-16 string (including lone surrogates)
+     */
+    private static String string(Random random) {
+        int kind = random.nextInt(8);
+        if (kind == 0) {
+            return null;
+        }
+        int length = random.nextInt(kind == 1 ? 300 : 20);
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (kind) {
+                case 2:
+                    value.append((char) random.nextInt(0x10000));
+                    break;
+                case 3:
+                    value.append("\u017e\u0107\u0161\u20ac\"\\\n\u0001\ud83d\ude00".charAt(random.nextInt(10)));
+                    break;
+                default:
+                    value.append((char) (' ' + random.nextInt(95)));
+            }
+        }
+        return value.toString();
+    }
+
+    private static String fixture(String name) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                M6TaskCodecTest.class.getResourceAsStream(name), "UTF-8"));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+}